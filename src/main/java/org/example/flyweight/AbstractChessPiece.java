@@ -0,0 +1,17 @@
+package org.example.flyweight;
+
+abstract class AbstractChessPiece{
+    private Color color;
+
+    public AbstractChessPiece(Color color){
+        this.color = color;
+    }
+
+    public Color getColor() {
+        return color;
+    }
+
+    public abstract String getName();
+
+    public abstract void displayChessPieceInfo(Position position);
+}
@@ -41,157 +41,218 @@ import java.util.*;
  *                2. 为了管理 环境中使用享元，由 factory 获取对象后，因为享元是无状态的，所以
  *                   在context中创建map，映射一个id，来代表享元                 sessionId 和 session池
  *                3. 享元 在同一时间只能由一个任务使用，在factory中，可以添加 remove方法，在获取
- *                   享元后移除，使用完，release它，将享元重新加入 pool           连接池、common-pool2
+ *                   享元后移除，使用完，release它，将享元重新加入 pool           连接池、common-pool2、ObjectPool
  */
 public class Chessboard {
+    // 象棋棋盘 9 列 10 行，x 为列，y 为行，格子编号 y * 9 + x
+    public static final int FILES = 9;
+    public static final int RANKS = 10;
+    public static final int SQUARES = FILES * RANKS;
+    // 空格子
+    static final byte EMPTY = 0;
 
-    private Map<AbstractChessPiece, Position> map = new HashMap<>();
+    // 每个格子存放享元的编号，享元只在显示时才通过 factory 取出，
+    // 同类的两个棋子各占一个格子，不会互相覆盖，放置棋子也不创建 Position 和 map entry
+    private final byte[] squares;
+    // Zobrist hash，随棋子的放置、移除、移动增量更新
+    private long hash;
 
+    /**
+     * 开局的棋盘，绿方在 0 ~ 4 行，红方在 5 ~ 9 行
+     */
     public Chessboard(){
-        init(0, 0, "车", Color.GREEN);
+        this.squares = new byte[SQUARES];
+        this.hash = Zobrist.EMPTY_BOARD;
+        String[] backRank = {"车", "马", "象", "士", "将", "士", "象", "马", "车"};
+        String[] redBackRank = {"车", "马", "相", "仕", "帅", "仕", "相", "马", "车"};
+        for (int x = 0; x < FILES; x++) {
+            init(x, 0, backRank[x], Color.GREEN);
+            init(x, 9, redBackRank[x], Color.RED);
+        }
+        init(1, 2, "炮", Color.GREEN);
+        init(7, 2, "炮", Color.GREEN);
+        init(1, 7, "炮", Color.RED);
+        init(7, 7, "炮", Color.RED);
+        for (int x = 0; x < FILES; x += 2) {
+            init(x, 3, "卒", Color.GREEN);
+            init(x, 6, "兵", Color.RED);
+        }
     }
 
-    private void init(int x, int y, String name, Color color){
-        Position position = new Position(x, y);
-        AbstractChessPiece chessPiece = FlyweightFactory.INSTANCE.getChessPiece(name, color);
-        map.put(chessPiece, position);
+    private Chessboard(byte[] squares, long hash){
+        this.squares = squares;
+        this.hash = hash;
     }
 
-    public Map<AbstractChessPiece, Position> getMap(){
-        return map;
+    /**
+     * 没有棋子的棋盘
+     * @return
+     */
+    public static Chessboard empty(){
+        return new Chessboard(new byte[SQUARES], Zobrist.EMPTY_BOARD);
     }
 
-    public static void main(String[] args) {
-        Chessboard chessboard = new Chessboard();
-        Map<AbstractChessPiece, Position> chessboardMap = chessboard.getMap();
-        chessboardMap.forEach(AbstractChessPiece::displayChessPieceInfo);
+    private void init(int x, int y, String name, Color color){
+        setId(square(x, y), FlyweightFactory.INSTANCE.idOf(name, color));
     }
-}
-
-class Position{
-    private int x;
-    private int y;
 
-    public Position(int x, int y) {
-        this.x = x;
-        this.y = y;
+    static int square(int x, int y){
+        if (x < 0 || x >= FILES || y < 0 || y >= RANKS) {
+            throw new IllegalArgumentException("position out of board: " + x + " " + y);
+        }
+        return y * FILES + x;
     }
 
-    public int getX() {
-        return x;
+    /**
+     * 放置棋子，覆盖格子中原来的棋子
+     * @param x
+     * @param y
+     * @param name
+     * @param color
+     */
+    public void put(int x, int y, String name, Color color){
+        init(x, y, name, color);
     }
 
-    public int getY() {
-        return y;
+    /**
+     * 移除棋子
+     * @param x
+     * @param y
+     * @return 原来的棋子，空格子返回 null
+     */
+    public AbstractChessPiece remove(int x, int y){
+        int square = square(x, y);
+        byte id = squares[square];
+        setId(square, EMPTY);
+        return id == EMPTY ? null : FlyweightFactory.INSTANCE.getChessPiece(id);
     }
 
-}
-
-abstract class AbstractChessPiece{
-    private Color color;
-
-    public AbstractChessPiece(Color color){
-        this.color = color;
+    /**
+     * 格子中的棋子
+     * @param x
+     * @param y
+     * @return 空格子返回 null
+     */
+    public AbstractChessPiece getChessPiece(int x, int y){
+        byte id = squares[square(x, y)];
+        return id == EMPTY ? null : FlyweightFactory.INSTANCE.getChessPiece(id);
     }
 
-    public Color getColor() {
-        return color;
+    /**
+     * 格子中享元的编号
+     * @param square 格子编号
+     * @return 空格子返回 EMPTY
+     */
+    byte getId(int square){
+        return squares[square];
     }
 
-    public abstract void displayChessPieceInfo(Position position);
-}
-
-class RedChessPiece extends AbstractChessPiece{
-
-    private String name;
-
-    public RedChessPiece(String name) {
-        super(Color.RED);
-        this.name = name;
+    final void setId(int square, byte id){
+        hash ^= Zobrist.key(squares[square], square) ^ Zobrist.key(id, square);
+        squares[square] = id;
     }
 
-    public String getName() {
-        return name;
+    /**
+     * 把 from 格子的棋子移动到 to，to 中原来的棋子被吃掉，hash 只做常数次异或
+     * @param from 格子编号
+     * @param to 格子编号
+     * @return 被吃掉的棋子编号，没有吃子时返回 EMPTY
+     */
+    byte move(int from, int to){
+        byte piece = squares[from];
+        byte captured = squares[to];
+        hash ^= Zobrist.key(piece, from) ^ Zobrist.key(captured, to) ^ Zobrist.key(piece, to);
+        squares[to] = piece;
+        squares[from] = EMPTY;
+        return captured;
     }
 
-    @Override
-    public void displayChessPieceInfo(Position position) {
-        if(position.getX() > 10){
-            System.out.println("当前棋子已经过河");
-        }else{
-            System.out.println("当前棋子没有过河");
-        }
-        System.out.println("当前棋子:" + name +" " + getColor().getColor() + "的状态为：" + position.getX() + " " + position.getY());
+    /**
+     * 撤销 move
+     * @param from
+     * @param to
+     * @param captured move 的返回值
+     */
+    void undo(int from, int to, byte captured){
+        byte piece = squares[to];
+        hash ^= Zobrist.key(piece, to) ^ Zobrist.key(captured, to) ^ Zobrist.key(piece, from);
+        squares[from] = piece;
+        squares[to] = captured;
     }
-}
-
-class GreenChessPiece extends AbstractChessPiece{
 
-    private String name;
-
-    public String getName() {
-        return name;
+    /**
+     * 局面的 Zobrist hash，棋子相同、位置相同的局面 hash 相同
+     * @return
+     */
+    public long getHash(){
+        return hash;
     }
 
-    public GreenChessPiece(String name) {
-        super(Color.GREEN);
-        this.name = name;
+    /**
+     * 复制棋盘，只复制一个 byte 数组
+     * @return
+     */
+    public Chessboard copy(){
+        return new Chessboard(squares.clone(), hash);
     }
 
-    @Override
-    public void displayChessPieceInfo(Position position) {
-        if(position.getX() > 10){
-            System.out.println("当前棋子已经过河");
-        }else{
-            System.out.println("当前棋子没有过河");
+    /**
+     * 棋子个数
+     * @return
+     */
+    public int count(){
+        int count = 0;
+        for (byte id : squares) {
+            if (id != EMPTY) {
+                count++;
+            }
         }
-        System.out.println("当前棋子:" + name +" " + getColor().getColor() + "的状态为：" + position.getX() + " " + position.getY());
+        return count;
     }
-}
-
-enum FlyweightFactory{
-    INSTANCE;
-    private Map<String, AbstractChessPiece> chessPiecePool = new HashMap<>();
 
     /**
-     * 懒加载 获取享元 没有则创建，传入的参数必须满足 能够创建享元
-     * @param name
-     * @param color
-     * @return
+     * 显示所有棋子，显示时才取出享元和创建外部状态 Position
      */
-    public AbstractChessPiece getChessPiece(String name, Color color){
-        // 该 id 主要用于寻址，一般不能暴漏到环境中，因为享元对象都是 无状态的、共享的、没有身份标识的，
-        //       和外部变量的映射关系由 不同的环境对象context自己管理，不能污染享元对象
-        //       也可以用不用id，用set存储享元，但是寻找过程中，需要name、color一层层遍历列表，时间复杂度高
-        // 如果传入的参数 有自己的唯一标识，不可以直接使用，
-        //       如果唯一标识name相同，其他属性color不同，可能会造成返回的值和传入参数不匹配
-        //       使用自己的id，来当作索引，则获取 享元 时，get只能传 id，不能传其他参数，否则不匹配
-        //       自己实现 create 方法，还要自己保证传入的 id，没有被使用过，否则不匹配
-        // 这样一来，factory形同虚设，违背了原则，尽量在环境对象中，保存 正在使用的享元对象 和 id、外部状态的映射
-        String id = name + "-" + color;
-        if (chessPiecePool.containsKey(id)) {
-            return chessPiecePool.get(id);
+    public void display(){
+        for (int square = 0; square < SQUARES; square++) {
+            if (squares[square] != EMPTY) {
+                FlyweightFactory.INSTANCE.getChessPiece(squares[square])
+                        .displayChessPieceInfo(new Position(square % FILES, square / FILES));
+            }
         }
-        AbstractChessPiece chessPiece = null;
-        if(color.equals(Color.GREEN)){
-            chessPiece = new GreenChessPiece(name);
-        }else{
-            chessPiece = new RedChessPiece(name);
-        }
-        chessPiecePool.put(id, chessPiece);
-        return chessPiece;
     }
 
-}
+    @Override
+    public boolean equals(Object o){
+        return o instanceof Chessboard && Arrays.equals(squares, ((Chessboard) o).squares);
+    }
 
-enum Color{
-    RED("红色"),
-    GREEN("绿色");
-    private String color;
-    Color(String color){
-        this.color = color;
+    @Override
+    public int hashCode(){
+        return Arrays.hashCode(squares);
     }
-    public String getColor(){
-        return this.color;
+
+    public static void main(String[] args) {
+        Chessboard chessboard = new Chessboard();
+        chessboard.display();
+        System.out.println("pieces: " + chessboard.count() + ", flyweights: " + FlyweightFactory.INSTANCE.size());
+
+        // 复制后互不影响
+        Chessboard copy = chessboard.copy();
+        copy.remove(0, 0);
+        System.out.println("copy: " + copy.count() + ", original: " + chessboard.count());
+
+        // 棋盘内存：对象头 + byte[90]
+        int boards = 1_000_000;
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        Chessboard[] copies = new Chessboard[boards];
+        for (int i = 0; i < boards; i++) {
+            copies[i] = chessboard.copy();
+        }
+        System.gc();
+        long used = runtime.totalMemory() - runtime.freeMemory() - before;
+        System.out.printf("%d boards, %d bytes/board%n", copies.length, used / boards);
     }
-}
\ No newline at end of file
+}
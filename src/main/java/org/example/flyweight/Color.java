@@ -0,0 +1,13 @@
+package org.example.flyweight;
+
+enum Color{
+    RED("红色"),
+    GREEN("绿色");
+    private String color;
+    Color(String color){
+        this.color = color;
+    }
+    public String getColor(){
+        return this.color;
+    }
+}
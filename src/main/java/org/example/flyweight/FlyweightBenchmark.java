@@ -0,0 +1,103 @@
+package org.example.flyweight;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 享元工厂的多线程命中吞吐：所有棋子预先创建，之后的获取全部命中
+ *   对比原来的实现（拼接 name + "-" + color 作为 key，HashMap 加锁后才能多线程使用）
+ *   同时统计每次获取在堆上分配的字节数
+ */
+public class FlyweightBenchmark {
+    private static final String[] NAMES = {"车", "马", "相", "仕", "帅", "炮", "兵", "象", "士", "将", "卒"};
+    private static final int LOOKUPS_PER_THREAD = 5_000_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        LegacyFactory legacy = new LegacyFactory();
+        for (int threads = 1; threads <= 8; threads *= 2) {
+            for (int round = 1; round <= 2; round++) {
+                Result old = run(threads, legacy::getChessPiece);
+                Result current = run(threads, FlyweightFactory.INSTANCE::getChessPiece);
+                System.out.printf("threads %d, round %d: legacy %.1f M/s (%.1f bytes/op), concurrent %.1f M/s (%.1f bytes/op)%n",
+                        threads, round, old.throughput, old.bytesPerOp, current.throughput, current.bytesPerOp);
+            }
+        }
+        System.out.println("pool size: " + FlyweightFactory.INSTANCE.size());
+    }
+
+    interface Lookup {
+        AbstractChessPiece get(String name, Color color);
+    }
+
+    private static Result run(int threads, Lookup lookup) throws InterruptedException {
+        // 预热，所有棋子都已经在池中
+        for (String name : NAMES) {
+            for (Color color : Color.values()) {
+                lookup.get(name, color);
+            }
+        }
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        LongAdder allocated = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                Color[] colors = Color.values();
+                long before = threadBean.getCurrentThreadAllocatedBytes();
+                int sink = 0;
+                for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+                    sink += lookup.get(NAMES[i % NAMES.length], colors[i & 1]).getColor().ordinal();
+                }
+                allocated.add(threadBean.getCurrentThreadAllocatedBytes() - before);
+                if (sink == -1) {
+                    System.out.println(sink);
+                }
+            });
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long nanos = System.nanoTime() - begin;
+        long operations = (long) threads * LOOKUPS_PER_THREAD;
+        return new Result(operations * 1000.0 / nanos, (double) allocated.sum() / operations);
+    }
+
+    private static final class Result {
+        final double throughput;
+        final double bytesPerOp;
+
+        Result(double throughput, double bytesPerOp) {
+            this.throughput = throughput;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+
+    /**
+     * 原来的实现，加锁后才能在多线程中使用
+     */
+    private static final class LegacyFactory {
+        private final Map<String, AbstractChessPiece> chessPiecePool = new HashMap<>();
+
+        synchronized AbstractChessPiece getChessPiece(String name, Color color) {
+            String id = name + "-" + color;
+            if (chessPiecePool.containsKey(id)) {
+                return chessPiecePool.get(id);
+            }
+            AbstractChessPiece chessPiece = color.equals(Color.GREEN) ? new GreenChessPiece(name) : new RedChessPiece(name);
+            chessPiecePool.put(id, chessPiece);
+            return chessPiece;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.flyweight;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+enum FlyweightFactory{
+    INSTANCE;
+    // 按颜色分开的池，每种颜色内部以 name 为 key，查找时不需要拼接字符串，命中时不创建任何对象
+    // EnumMap 在构造时填满，之后只读，多线程访问安全
+    private final Map<Color, ConcurrentHashMap<String, AbstractChessPiece>> chessPiecePool = new EnumMap<>(Color.class);
+    {
+        for (Color color : Color.values()) {
+            chessPiecePool.put(color, new ConcurrentHashMap<>());
+        }
+    }
+    // 享元编号，只用于棋盘这类紧凑的环境对象按编号寻址，0 表示没有棋子，所以从 1 开始
+    static final int MAX_ID = Byte.MAX_VALUE;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicReferenceArray<AbstractChessPiece> chessPieceById = new AtomicReferenceArray<>(MAX_ID + 1);
+    // 享元没有重写 equals，按引用比较；Byte 的装箱都是缓存的，查找时不创建对象
+    private final ConcurrentHashMap<AbstractChessPiece, Byte> ids = new ConcurrentHashMap<>();
+
+    /**
+     * 懒加载 获取享元 没有则创建，传入的参数必须满足 能够创建享元
+     *   可以被多个线程同时调用，同一个 name、color 只会创建一个享元
+     * @param name
+     * @param color
+     * @return
+     */
+    public AbstractChessPiece getChessPiece(String name, Color color){
+        // 该 id 主要用于寻址，一般不能暴漏到环境中，因为享元对象都是 无状态的、共享的、没有身份标识的，
+        //       和外部变量的映射关系由 不同的环境对象context自己管理，不能污染享元对象
+        //       也可以用不用id，用set存储享元，但是寻找过程中，需要name、color一层层遍历列表，时间复杂度高
+        // 如果传入的参数 有自己的唯一标识，不可以直接使用，
+        //       如果唯一标识name相同，其他属性color不同，可能会造成返回的值和传入参数不匹配
+        //       使用自己的id，来当作索引，则获取 享元 时，get只能传 id，不能传其他参数，否则不匹配
+        //       自己实现 create 方法，还要自己保证传入的 id，没有被使用过，否则不匹配
+        // 这样一来，factory形同虚设，违背了原则，尽量在环境对象中，保存 正在使用的享元对象 和 id、外部状态的映射
+        ConcurrentHashMap<String, AbstractChessPiece> pool = chessPiecePool.get(color);
+        // 先 get，命中时不进入 computeIfAbsent，避免创建 lambda 和加锁
+        AbstractChessPiece chessPiece = pool.get(name);
+        if (chessPiece != null) {
+            return chessPiece;
+        }
+        return pool.computeIfAbsent(name, key -> createChessPiece(key, color));
+    }
+
+    /**
+     * 在 computeIfAbsent 中调用，同一个 name、color 只会执行一次
+     */
+    private AbstractChessPiece createChessPiece(String name, Color color){
+        int id = nextId.incrementAndGet();
+        if (id > MAX_ID) {
+            throw new IllegalStateException("too many flyweights: " + id);
+        }
+        AbstractChessPiece chessPiece;
+        if(color.equals(Color.GREEN)){
+            chessPiece = new GreenChessPiece(name);
+        }else{
+            chessPiece = new RedChessPiece(name);
+        }
+        chessPieceById.set(id, chessPiece);
+        ids.put(chessPiece, (byte) id);
+        return chessPiece;
+    }
+
+    /**
+     * 享元的编号，没有则创建享元
+     * @param name
+     * @param color
+     * @return 1 ~ MAX_ID
+     */
+    public byte idOf(String name, Color color){
+        return ids.get(getChessPiece(name, color));
+    }
+
+    /**
+     * 享元的编号
+     * @param chessPiece 必须是由该 factory 创建的享元
+     * @return
+     */
+    public byte idOf(AbstractChessPiece chessPiece){
+        Byte id = ids.get(chessPiece);
+        if (id == null) {
+            throw new IllegalArgumentException("not a pooled chess piece: " + chessPiece.getName());
+        }
+        return id;
+    }
+
+    /**
+     * 按编号获取享元
+     * @param id
+     * @return 编号不存在时返回 null
+     */
+    public AbstractChessPiece getChessPiece(byte id){
+        return id <= 0 ? null : chessPieceById.get(id);
+    }
+
+    /**
+     * 池中享元的个数
+     * @return
+     */
+    public int size(){
+        int size = 0;
+        for (ConcurrentHashMap<String, AbstractChessPiece> pool : chessPiecePool.values()) {
+            size += pool.size();
+        }
+        return size;
+    }
+
+}
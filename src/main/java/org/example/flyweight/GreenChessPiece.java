@@ -0,0 +1,26 @@
+package org.example.flyweight;
+
+class GreenChessPiece extends AbstractChessPiece{
+
+    private String name;
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public GreenChessPiece(String name) {
+        super(Color.GREEN);
+        this.name = name;
+    }
+
+    @Override
+    public void displayChessPieceInfo(Position position) {
+        if(position.getX() > 10){
+            System.out.println("当前棋子已经过河");
+        }else{
+            System.out.println("当前棋子没有过河");
+        }
+        System.out.println("当前棋子:" + name +" " + getColor().getColor() + "的状态为：" + position.getX() + " " + position.getY());
+    }
+}
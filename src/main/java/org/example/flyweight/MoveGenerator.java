@@ -0,0 +1,348 @@
+package org.example.flyweight;
+
+/**
+ * 象棋走法生成：棋子的种类和颜色第一次遇到某个编号时从 FlyweightFactory 中取出，之后只查数组
+ *   着法用一个 int 表示：from | to << 8
+ *   合法着法：走完之后己方的将（帅）不被攻击，并且双方的将帅不在同一列上直接照面
+ *
+ *   多个线程可以共用同一个实例：编号对应的享元不会改变，并发填充时写入的值相同
+ */
+final class MoveGenerator {
+    // 调用方提供的着法缓冲区的最小长度，写入超出缓冲区时抛出异常
+    static final int MAX_MOVES = 128;
+
+    static final byte NONE = 0;
+    static final byte KING = 1;
+    static final byte ADVISOR = 2;
+    static final byte ELEPHANT = 3;
+    static final byte HORSE = 4;
+    static final byte ROOK = 5;
+    static final byte CANNON = 6;
+    static final byte PAWN = 7;
+
+    private static final int[][] ORTHOGONAL = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+    private static final int[][] DIAGONAL = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+    // 马的走法和对应的马腿
+    private static final int[][] HORSE_MOVES = {
+            {1, 2, 0, 1}, {-1, 2, 0, 1}, {1, -2, 0, -1}, {-1, -2, 0, -1},
+            {2, 1, 1, 0}, {2, -1, 1, 0}, {-2, 1, -1, 0}, {-2, -1, -1, 0}};
+
+    private final byte[] kinds = new byte[FlyweightFactory.MAX_ID + 1];
+    private final Color[] colors = new Color[FlyweightFactory.MAX_ID + 1];
+
+    /**
+     * 种类和颜色各自判断是否已经填充，另一个线程未填充完时最多重复查一次享元工厂
+     */
+    private byte kind(byte id) {
+        byte kind = kinds[id];
+        if (kind == NONE) {
+            kind = kindOf(FlyweightFactory.INSTANCE.getChessPiece(id).getName());
+            kinds[id] = kind;
+        }
+        return kind;
+    }
+
+    private Color color(byte id) {
+        Color color = colors[id];
+        if (color == null) {
+            color = FlyweightFactory.INSTANCE.getChessPiece(id).getColor();
+            colors[id] = color;
+        }
+        return color;
+    }
+
+    private static byte kindOf(String name) {
+        switch (name) {
+            case "帅":
+            case "将":
+                return KING;
+            case "仕":
+            case "士":
+                return ADVISOR;
+            case "相":
+            case "象":
+                return ELEPHANT;
+            case "马":
+                return HORSE;
+            case "车":
+                return ROOK;
+            case "炮":
+                return CANNON;
+            case "兵":
+            case "卒":
+                return PAWN;
+            default:
+                throw new IllegalArgumentException("unknown chess piece: " + name);
+        }
+    }
+
+    static int from(int move) {
+        return move & 0xFF;
+    }
+
+    static int to(int move) {
+        return move >>> 8;
+    }
+
+    static Color opponent(Color side) {
+        return side == Color.RED ? Color.GREEN : Color.RED;
+    }
+
+    /**
+     * 红方在 5 ~ 9 行向上走，绿方在 0 ~ 4 行向下走
+     */
+    private static int forward(Color side) {
+        return side == Color.RED ? -1 : 1;
+    }
+
+    private static boolean ownHalf(Color side, int y) {
+        return side == Color.RED ? y >= 5 : y <= 4;
+    }
+
+    private static boolean inPalace(Color side, int x, int y) {
+        return x >= 3 && x <= 5 && (side == Color.RED ? y >= 7 && y <= 9 : y >= 0 && y <= 2);
+    }
+
+    private static boolean onBoard(int x, int y) {
+        return x >= 0 && x < Chessboard.FILES && y >= 0 && y < Chessboard.RANKS;
+    }
+
+    private static int square(int x, int y) {
+        return y * Chessboard.FILES + x;
+    }
+
+    /**
+     * 生成合法着法
+     * @param board 生成过程中会临时走子，结束后恢复原状
+     * @param side
+     * @param moves 至少 MAX_MOVES 个元素
+     * @return 着法个数
+     * @throws IllegalArgumentException moves 不足 MAX_MOVES 个元素，或者放不下所有着法
+     */
+    int generateLegal(Chessboard board, Color side, int[] moves) {
+        int count = generatePseudoLegal(board, side, moves);
+        int legal = 0;
+        for (int i = 0; i < count; i++) {
+            int from = from(moves[i]);
+            int to = to(moves[i]);
+            byte captured = board.move(from, to);
+            if (!inCheck(board, side)) {
+                moves[legal++] = moves[i];
+            }
+            board.undo(from, to, captured);
+        }
+        return legal;
+    }
+
+    /**
+     * 按棋子的走法规则生成着法，不检查走完后是否被将军
+     * @throws IllegalArgumentException moves 不足 MAX_MOVES 个元素，或者放不下所有着法
+     */
+    int generatePseudoLegal(Chessboard board, Color side, int[] moves) {
+        if (moves.length < MAX_MOVES) {
+            throw new IllegalArgumentException("moves must have at least " + MAX_MOVES + " elements: " + moves.length);
+        }
+        int count = 0;
+        for (int from = 0; from < Chessboard.SQUARES; from++) {
+            byte id = board.getId(from);
+            if (id == Chessboard.EMPTY || color(id) != side) {
+                continue;
+            }
+            int x = from % Chessboard.FILES;
+            int y = from / Chessboard.FILES;
+            switch (kind(id)) {
+                case KING:
+                    for (int[] d : ORTHOGONAL) {
+                        if (inPalace(side, x + d[0], y + d[1])) {
+                            count = add(board, side, moves, count, from, x + d[0], y + d[1]);
+                        }
+                    }
+                    break;
+                case ADVISOR:
+                    for (int[] d : DIAGONAL) {
+                        if (inPalace(side, x + d[0], y + d[1])) {
+                            count = add(board, side, moves, count, from, x + d[0], y + d[1]);
+                        }
+                    }
+                    break;
+                case ELEPHANT:
+                    for (int[] d : DIAGONAL) {
+                        int tx = x + 2 * d[0];
+                        int ty = y + 2 * d[1];
+                        if (onBoard(tx, ty) && ownHalf(side, ty)
+                                && board.getId(square(x + d[0], y + d[1])) == Chessboard.EMPTY) {
+                            count = add(board, side, moves, count, from, tx, ty);
+                        }
+                    }
+                    break;
+                case HORSE:
+                    for (int[] d : HORSE_MOVES) {
+                        int tx = x + d[0];
+                        int ty = y + d[1];
+                        if (onBoard(tx, ty) && board.getId(square(x + d[2], y + d[3])) == Chessboard.EMPTY) {
+                            count = add(board, side, moves, count, from, tx, ty);
+                        }
+                    }
+                    break;
+                case ROOK:
+                    for (int[] d : ORTHOGONAL) {
+                        int tx = x + d[0];
+                        int ty = y + d[1];
+                        while (onBoard(tx, ty)) {
+                            count = add(board, side, moves, count, from, tx, ty);
+                            if (board.getId(square(tx, ty)) != Chessboard.EMPTY) {
+                                break;
+                            }
+                            tx += d[0];
+                            ty += d[1];
+                        }
+                    }
+                    break;
+                case CANNON:
+                    for (int[] d : ORTHOGONAL) {
+                        int tx = x + d[0];
+                        int ty = y + d[1];
+                        // 不吃子时与车相同
+                        while (onBoard(tx, ty) && board.getId(square(tx, ty)) == Chessboard.EMPTY) {
+                            count = push(moves, count, from, square(tx, ty));
+                            tx += d[0];
+                            ty += d[1];
+                        }
+                        // 隔一个棋子（炮架）吃子
+                        tx += d[0];
+                        ty += d[1];
+                        while (onBoard(tx, ty)) {
+                            byte target = board.getId(square(tx, ty));
+                            if (target != Chessboard.EMPTY) {
+                                if (color(target) != side) {
+                                    count = push(moves, count, from, square(tx, ty));
+                                }
+                                break;
+                            }
+                            tx += d[0];
+                            ty += d[1];
+                        }
+                    }
+                    break;
+                case PAWN:
+                    int fy = y + forward(side);
+                    if (onBoard(x, fy)) {
+                        count = add(board, side, moves, count, from, x, fy);
+                    }
+                    // 过河后可以横走
+                    if (!ownHalf(side, y)) {
+                        if (x > 0) {
+                            count = add(board, side, moves, count, from, x - 1, y);
+                        }
+                        if (x < Chessboard.FILES - 1) {
+                            count = add(board, side, moves, count, from, x + 1, y);
+                        }
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("unknown chess piece id: " + id);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 目标格子为空或者是对方棋子时加入着法
+     */
+    private int add(Chessboard board, Color side, int[] moves, int count, int from, int tx, int ty) {
+        int to = square(tx, ty);
+        byte target = board.getId(to);
+        if (target == Chessboard.EMPTY || color(target) != side) {
+            count = push(moves, count, from, to);
+        }
+        return count;
+    }
+
+    /**
+     * 所有着法都从这里写入缓冲区，放不下时抛出异常而不是越界
+     */
+    private static int push(int[] moves, int count, int from, int to) {
+        if (count == moves.length) {
+            throw new IllegalArgumentException("move buffer full: " + moves.length);
+        }
+        moves[count] = from | to << 8;
+        return count + 1;
+    }
+
+    /**
+     * side 的将（帅）是否被攻击，包括双方将帅照面
+     */
+    boolean inCheck(Chessboard board, Color side) {
+        int king = -1;
+        for (int square = 0; square < Chessboard.SQUARES; square++) {
+            byte id = board.getId(square);
+            if (id != Chessboard.EMPTY && kind(id) == KING && color(id) == side) {
+                king = square;
+                break;
+            }
+        }
+        if (king < 0) {
+            return true;
+        }
+        int kx = king % Chessboard.FILES;
+        int ky = king / Chessboard.FILES;
+
+        // 车、将帅照面：该方向上的第一个棋子；炮：第二个棋子
+        for (int[] d : ORTHOGONAL) {
+            int tx = kx + d[0];
+            int ty = ky + d[1];
+            int seen = 0;
+            while (onBoard(tx, ty)) {
+                byte id = board.getId(square(tx, ty));
+                if (id != Chessboard.EMPTY) {
+                    seen++;
+                    if (color(id) != side) {
+                        if (seen == 1 && (kind(id) == ROOK || kind(id) == KING)) {
+                            return true;
+                        }
+                        if (seen == 2 && kind(id) == CANNON) {
+                            return true;
+                        }
+                    }
+                    if (seen == 2) {
+                        break;
+                    }
+                }
+                tx += d[0];
+                ty += d[1];
+            }
+        }
+
+        // 马：从马的位置看，马腿在马和将之间靠近马的一侧
+        for (int[] d : HORSE_MOVES) {
+            int hx = kx - d[0];
+            int hy = ky - d[1];
+            if (!onBoard(hx, hy)) {
+                continue;
+            }
+            byte id = board.getId(square(hx, hy));
+            if (id != Chessboard.EMPTY && kind(id) == HORSE && color(id) != side
+                    && board.getId(square(hx + d[2], hy + d[3])) == Chessboard.EMPTY) {
+                return true;
+            }
+        }
+
+        // 兵（卒）：正前方走过来，或者过河后从左右横走过来
+        Color opponent = opponent(side);
+        int py = ky - forward(opponent);
+        if (onBoard(kx, py) && isPawn(board.getId(square(kx, py)), opponent)) {
+            return true;
+        }
+        for (int dx = -1; dx <= 1; dx += 2) {
+            int px = kx + dx;
+            if (onBoard(px, ky) && !ownHalf(opponent, ky) && isPawn(board.getId(square(px, ky)), opponent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPawn(byte id, Color color) {
+        return id != Chessboard.EMPTY && kind(id) == PAWN && color(id) == color;
+    }
+}
@@ -0,0 +1,343 @@
+package org.example.flyweight;
+
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 对象池：享元在同一时间只能由一个任务使用，borrow 时从池中取出，使用完 release 放回（见 Chessboard 注释中的第 3 种模型）
+ *   空闲对象放在无锁栈中（Treiber stack），后放回的先取出，取到的对象大多还在缓存中
+ *   同时借出的对象数由信号量限制在 maxSize 以内，池空时最多等待 borrowTimeout，超时抛出 NoSuchElementException
+ *   放回时先校验，校验失败的对象直接丢弃，下次 borrow 时重新创建
+ *   借出中的对象按引用记录，重复放回、放回不是从本池借出的对象抛出 IllegalStateException，不会多释放许可
+ *
+ *   先放回空闲栈再释放许可：拿到许可的线程取不到空闲对象时，说明其余对象都在别人手中，新建后总数不会超过 maxSize
+ *
+ * @param <T>
+ */
+public class ObjectPool<T> {
+    private final Supplier<? extends T> factory;
+    private final Predicate<? super T> validator;
+    private final int maxSize;
+    private final long borrowTimeoutNanos;
+
+    private final AtomicReference<Node<T>> idle = new AtomicReference<>();
+    private final Semaphore permits;
+    private final AtomicInteger created = new AtomicInteger();
+    private final Set<Borrowed> outstanding = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder creates = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAccumulator peakInUse = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param factory 池中对象不足时创建新对象
+     * @param validator 放回时校验，返回 false 的对象被丢弃
+     * @param maxSize 最多同时借出的对象数
+     * @param borrowTimeout 池空时的最长等待时间
+     * @param unit
+     */
+    public ObjectPool(Supplier<? extends T> factory, Predicate<? super T> validator, int maxSize,
+                      long borrowTimeout, TimeUnit unit) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.factory = factory;
+        this.validator = validator;
+        this.maxSize = maxSize;
+        this.borrowTimeoutNanos = unit.toNanos(borrowTimeout);
+        this.permits = new Semaphore(maxSize);
+    }
+
+    /**
+     * 借出一个对象，池空时等待其他线程放回
+     * @return
+     * @throws InterruptedException
+     * @throws NoSuchElementException 等待超时
+     */
+    public T borrow() throws InterruptedException {
+        if (!permits.tryAcquire()) {
+            long begin = System.nanoTime();
+            boolean acquired = permits.tryAcquire(borrowTimeoutNanos, TimeUnit.NANOSECONDS);
+            long nanos = System.nanoTime() - begin;
+            waits.increment();
+            waitNanos.add(nanos);
+            maxWaitNanos.accumulate(nanos);
+            if (!acquired) {
+                timeouts.increment();
+                throw new NoSuchElementException("timeout waiting for idle object, maxSize " + maxSize);
+            }
+        }
+        borrows.increment();
+        peakInUse.accumulate(getInUse());
+        T object = pop();
+        if (object == null) {
+            try {
+                object = factory.get();
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+            created.incrementAndGet();
+            creates.increment();
+        }
+        outstanding.add(new Borrowed(object));
+        return object;
+    }
+
+    /**
+     * 放回借出的对象，每个对象只能放回一次
+     * @param object
+     * @throws IllegalStateException 对象已经放回过，或者不是从本池借出的
+     */
+    public void release(T object) {
+        // 先移除借出记录，同一个对象并发放回时只有一个线程成功
+        if (!outstanding.remove(new Borrowed(object))) {
+            throw new IllegalStateException("object is not borrowed from this pool or already released");
+        }
+        boolean valid;
+        try {
+            valid = validator.test(object);
+        } catch (RuntimeException e) {
+            valid = false;
+        }
+        if (valid) {
+            push(object);
+        } else {
+            invalid.increment();
+            created.decrementAndGet();
+        }
+        permits.release();
+    }
+
+    private void push(T object) {
+        Node<T> node = new Node<>(object);
+        Node<T> head;
+        do {
+            head = idle.get();
+            node.next = head;
+        } while (!idle.compareAndSet(head, node));
+    }
+
+    /**
+     * 每次 push 都是新的 Node，出栈的 Node 不会被重新入栈，不存在 ABA 问题
+     */
+    private T pop() {
+        Node<T> head;
+        do {
+            head = idle.get();
+            if (head == null) {
+                return null;
+            }
+        } while (!idle.compareAndSet(head, head.next));
+        return head.object;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 已创建且未丢弃的对象数
+     */
+    public int getCreated() {
+        return created.get();
+    }
+
+    public int getInUse() {
+        return maxSize - permits.availablePermits();
+    }
+
+    /**
+     * 借出的对象数占 maxSize 的比例
+     */
+    public double getUtilization() {
+        return (double) getInUse() / maxSize;
+    }
+
+    public Stats stats() {
+        return new Stats(borrows.sum(), waits.sum(), waitNanos.sum(), maxWaitNanos.get(), timeouts.sum(),
+                creates.sum(), invalid.sum(), peakInUse.get(), maxSize);
+    }
+
+    /**
+     * 按引用比较的借出记录，池中对象可能按内容重写了 equals（比如 Chessboard）
+     */
+    private static final class Borrowed {
+        private final Object object;
+
+        Borrowed(Object object) {
+            this.object = object;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Borrowed && ((Borrowed) o).object == object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
+    }
+
+    private static final class Node<T> {
+        final T object;
+        Node<T> next;
+
+        Node(T object) {
+            this.object = object;
+        }
+    }
+
+    /**
+     * 统计的副本
+     */
+    public static final class Stats {
+        private final long borrows;
+        private final long waits;
+        private final long waitNanos;
+        private final long maxWaitNanos;
+        private final long timeouts;
+        private final long creates;
+        private final long invalid;
+        private final long peakInUse;
+        private final int maxSize;
+
+        Stats(long borrows, long waits, long waitNanos, long maxWaitNanos, long timeouts,
+              long creates, long invalid, long peakInUse, int maxSize) {
+            this.borrows = borrows;
+            this.waits = waits;
+            this.waitNanos = waitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.timeouts = timeouts;
+            this.creates = creates;
+            this.invalid = invalid;
+            this.peakInUse = peakInUse;
+            this.maxSize = maxSize;
+        }
+
+        public long getBorrows() {
+            return borrows;
+        }
+
+        /**
+         * 需要等待的 borrow 次数（包括超时）
+         */
+        public long getWaits() {
+            return waits;
+        }
+
+        /**
+         * 每次需要等待的 borrow 的平均等待时间
+         */
+        public long getMeanWaitNanos() {
+            return waits == 0 ? 0 : waitNanos / waits;
+        }
+
+        public long getMaxWaitNanos() {
+            return maxWaitNanos;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getCreates() {
+            return creates;
+        }
+
+        public long getInvalid() {
+            return invalid;
+        }
+
+        public long getPeakInUse() {
+            return peakInUse;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("borrows %d, waits %d (mean %d us, max %d us), timeouts %d, creates %d, invalid %d, peak in use %d/%d",
+                    borrows, waits, getMeanWaitNanos() / 1_000, maxWaitNanos / 1_000, timeouts,
+                    creates, invalid, peakInUse, maxSize);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        // 棋盘池：借出的棋盘走子后必须退回开局，放回时按 hash 校验
+        long initial = new Chessboard().getHash();
+        ObjectPool<Chessboard> pool = new ObjectPool<>(Chessboard::new,
+                board -> board.getHash() == initial, 4, 50, TimeUnit.MILLISECONDS);
+        MoveGenerator generator = new MoveGenerator();
+
+        Thread[] threads = new Thread[8];
+        LongAdder nodes = new LongAdder();
+        long begin = System.nanoTime();
+        for (int t = 0; t < threads.length; t++) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                int[] moves = new int[MoveGenerator.MAX_MOVES];
+                for (int i = 0; i < 20_000; i++) {
+                    Chessboard board;
+                    try {
+                        board = pool.borrow();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (NoSuchElementException e) {
+                        continue;
+                    }
+                    int count = generator.generateLegal(board, Color.RED, moves);
+                    int move = moves[random.nextInt(count)];
+                    byte captured = board.move(MoveGenerator.from(move), MoveGenerator.to(move));
+                    nodes.add(generator.generateLegal(board, Color.GREEN, moves));
+                    // 偶尔忘记退回，放回时校验失败被丢弃
+                    if (random.nextInt(1000) != 0) {
+                        board.undo(MoveGenerator.from(move), MoveGenerator.to(move), captured);
+                    }
+                    pool.release(board);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long nanos = System.nanoTime() - begin;
+        System.out.printf("%d threads, %d nodes in %d ms, created %d, in use %d (%.0f%%)%n", threads.length,
+                nodes.sum(), nanos / 1_000_000, pool.getCreated(), pool.getInUse(), pool.getUtilization() * 100);
+        System.out.println(pool.stats());
+
+        // 全部借出后再 borrow，等待超时
+        ObjectPool<Chessboard> single = new ObjectPool<>(Chessboard::new, board -> true, 1, 20, TimeUnit.MILLISECONDS);
+        Chessboard board = single.borrow();
+        try {
+            single.borrow();
+        } catch (NoSuchElementException e) {
+            System.out.println(e.getMessage() + ", " + single.stats());
+        }
+        single.release(board);
+
+        // 重复放回被拒绝，借出数不会变成负数
+        try {
+            single.release(board);
+        } catch (IllegalStateException e) {
+            System.out.println("double release: " + e.getMessage() + ", in use " + single.getInUse());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.example.flyweight;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * perft：从一个局面出发，统计走到指定深度时所有合法着法序列的个数
+ *   结果有公认的标准值，可以校验走法生成，同时作为棋盘内存布局和享元查找的吞吐基准
+ *   象棋开局：深度 1 ~ 5 分别为 44、1920、79666、3290240、133312995
+ *
+ *   根节点的每个着法是一个 fork/join 任务，任务中复制棋盘后顺序搜索，任务之间不共享可变状态
+ */
+public class Perft {
+    // 公认的开局 perft 值，下标为深度
+    static final long[] INITIAL_POSITION = {1, 44, 1920, 79666, 3290240, 133312995};
+
+    private final MoveGenerator generator;
+
+    public Perft() {
+        this(new MoveGenerator());
+    }
+
+    Perft(MoveGenerator generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * 单线程 perft
+     * @param board 搜索结束后恢复原状
+     * @param side 走棋方
+     * @param depth
+     * @return
+     */
+    public long perft(Chessboard board, Color side, int depth) {
+        return search(board, side, depth, new int[depth + 1][MoveGenerator.MAX_MOVES]);
+    }
+
+    /**
+     * 根节点着法并行的 perft
+     * @param board 不会被修改
+     * @param side
+     * @param depth
+     * @param pool
+     * @return
+     */
+    public long parallelPerft(Chessboard board, Color side, int depth, ForkJoinPool pool) {
+        if (depth <= 1) {
+            return perft(board.copy(), side, depth);
+        }
+        return pool.invoke(new RootTask(board, side, depth));
+    }
+
+    private long search(Chessboard board, Color side, int depth, int[][] buffers) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = buffers[depth];
+        int count = generator.generateLegal(board, side, moves);
+        if (depth == 1) {
+            return count;
+        }
+        Color opponent = MoveGenerator.opponent(side);
+        long nodes = 0;
+        for (int i = 0; i < count; i++) {
+            int from = MoveGenerator.from(moves[i]);
+            int to = MoveGenerator.to(moves[i]);
+            byte captured = board.move(from, to);
+            nodes += search(board, opponent, depth - 1, buffers);
+            board.undo(from, to, captured);
+        }
+        return nodes;
+    }
+
+    /**
+     * 根节点：每个合法着法一个子任务
+     *   ForkJoinTask 实现了 Serializable，但任务只在进程内执行，不会被序列化
+     */
+    @SuppressWarnings("serial")
+    private final class RootTask extends RecursiveTask<Long> {
+        private final Chessboard board;
+        private final Color side;
+        private final int depth;
+
+        RootTask(Chessboard board, Color side, int depth) {
+            this.board = board;
+            this.side = side;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            int[] moves = new int[MoveGenerator.MAX_MOVES];
+            int count = generator.generateLegal(board, side, moves);
+            List<MoveTask> tasks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Chessboard child = board.copy();
+                child.move(MoveGenerator.from(moves[i]), MoveGenerator.to(moves[i]));
+                MoveTask task = new MoveTask(child, MoveGenerator.opponent(side), depth - 1);
+                task.fork();
+                tasks.add(task);
+            }
+            long nodes = 0;
+            for (MoveTask task : tasks) {
+                nodes += task.join();
+            }
+            return nodes;
+        }
+    }
+
+    /**
+     * 走一步后的子树，持有自己的棋盘副本；同样不会被序列化
+     */
+    @SuppressWarnings("serial")
+    private final class MoveTask extends RecursiveTask<Long> {
+        private final Chessboard board;
+        private final Color side;
+        private final int depth;
+
+        MoveTask(Chessboard board, Color side, int depth) {
+            this.board = board;
+            this.side = side;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            return perft(board, side, depth);
+        }
+    }
+
+    public static void main(String[] args) {
+        int maxDepth = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        Perft perft = new Perft();
+        Chessboard board = new Chessboard();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        System.out.println("parallelism: " + pool.getParallelism());
+        for (int round = 1; round <= 2; round++) {
+            for (int depth = 1; depth <= maxDepth; depth++) {
+                long begin = System.nanoTime();
+                long nodes = perft.perft(board, Color.RED, depth);
+                long sequential = System.nanoTime() - begin;
+                begin = System.nanoTime();
+                long parallelNodes = perft.parallelPerft(board, Color.RED, depth, pool);
+                long parallel = System.nanoTime() - begin;
+                check(depth, nodes, parallelNodes);
+                System.out.printf("round %d, depth %d: %d nodes, sequential %d ms (%.2f M nodes/s), parallel %d ms (%.2f M nodes/s)%n",
+                        round, depth, nodes, sequential / 1_000_000,
+                        nodes * 1000.0 / Math.max(sequential, 1), parallel / 1_000_000,
+                        nodes * 1000.0 / Math.max(parallel, 1));
+            }
+        }
+    }
+
+    /**
+     * 与公认值、并行结果不一致时直接失败，不能只打印出来
+     * @throws IllegalStateException
+     */
+    static void check(int depth, long nodes, long parallelNodes) {
+        if (parallelNodes != nodes) {
+            throw new IllegalStateException("depth " + depth + ": parallel " + parallelNodes + " != sequential " + nodes);
+        }
+        if (depth < INITIAL_POSITION.length && nodes != INITIAL_POSITION[depth]) {
+            throw new IllegalStateException("depth " + depth + ": " + nodes + " nodes, expected " + INITIAL_POSITION[depth]);
+        }
+    }
+}
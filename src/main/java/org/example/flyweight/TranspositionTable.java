@@ -0,0 +1,194 @@
+package org.example.flyweight;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 置换表：按局面的 Zobrist hash 缓存计算结果，固定大小，多线程读写不加锁
+ *   开放寻址，每个槽位占 long[] 中相邻的两个元素：(hash ^ value, value)，
+ *   读取时两个元素异或后与 hash 比较，两个线程同时写同一个槽位造成的撕裂写会被识别为未命中，不会返回错误的结果
+ *
+ *   冲突时向后线性探测，最多 PROBES 个槽位；探测范围内没有相同 hash 或空槽位时覆盖第一个槽位，适合可以重新计算的缓存
+ *   两个元素都为 0 表示空槽位，hash 为 0 的局面换成 ZERO_HASH 存取，不会与空槽位混淆；容量向上取整为 2 的幂
+ */
+public class TranspositionTable {
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+    // 线性探测的最大槽位数
+    private static final int PROBES = 4;
+    // hash 为 0 时使用的替代值，与真实 hash 相同的概率和任意两个局面 hash 冲突一样
+    private static final long ZERO_HASH = 0x9E37_79B9_7F4A_7C15L;
+
+    private final long[] slots;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * @param capacity 槽位数
+     */
+    public TranspositionTable(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 29) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        size = Math.max(size, 1);
+        this.slots = new long[size * 2];
+        this.mask = size - 1;
+    }
+
+    /**
+     * 查找
+     * @param hash 局面的 hash
+     * @param missing 未命中时的返回值
+     * @return
+     */
+    public long get(long hash, long missing) {
+        hash = nonZero(hash);
+        for (int probe = 0; probe < PROBES; probe++) {
+            int index = index(hash, probe);
+            // opaque 保证 long 的读写是原子的，顺序由异或校验保证
+            long check = (long) SLOTS.getOpaque(slots, index);
+            long value = (long) SLOTS.getOpaque(slots, index + 1);
+            if ((check ^ value) == hash) {
+                hits.increment();
+                return value;
+            }
+            // 槽位只会被覆盖不会被清空，遇到空槽位说明后面也不会有
+            if (check == 0 && value == 0) {
+                break;
+            }
+        }
+        misses.increment();
+        return missing;
+    }
+
+    /**
+     * 写入：优先写到 hash 相同或空的槽位，探测范围内都被其他局面占用时覆盖第一个槽位
+     * @param hash
+     * @param value
+     */
+    public void put(long hash, long value) {
+        hash = nonZero(hash);
+        int target = index(hash, 0);
+        for (int probe = 0; probe < PROBES; probe++) {
+            int index = index(hash, probe);
+            long check = (long) SLOTS.getOpaque(slots, index);
+            long stored = (long) SLOTS.getOpaque(slots, index + 1);
+            if ((check ^ stored) == hash || (check == 0 && stored == 0)) {
+                target = index;
+                break;
+            }
+        }
+        SLOTS.setOpaque(slots, target, hash ^ value);
+        SLOTS.setOpaque(slots, target + 1, value);
+        stores.increment();
+    }
+
+    private int index(long hash, int probe) {
+        return (((int) hash + probe) & mask) << 1;
+    }
+
+    private static long nonZero(long hash) {
+        return hash == 0 ? ZERO_HASH : hash;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("capacity %d, hits %d, misses %d, stores %d, hit rate %.2f%%",
+                capacity(), getHits(), getMisses(), getStores(), getHitRate() * 100);
+    }
+
+    public static void main(String[] args) {
+        Chessboard board = new Chessboard();
+        long initial = board.getHash();
+
+        // 增量更新与重新计算一致，走一步再退回 hash 复原
+        int from = Chessboard.square(1, 2);
+        int to = Chessboard.square(4, 2);
+        byte captured = board.move(from, to);
+        System.out.println("incremental == full: " + (board.getHash() == Zobrist.hashOf(board)));
+        board.undo(from, to, captured);
+        System.out.println("restored: " + (board.getHash() == initial));
+
+        // hash 为 0 的局面不会命中空槽位
+        TranspositionTable small = new TranspositionTable(8);
+        System.out.println("hash 0 before put: " + small.get(0, -1));
+        small.put(0, 41);
+        System.out.println("hash 0 after put: " + small.get(0, -1));
+        // 1 和 9 的低 3 位相同，落在 8 个槽位中的同一个，第二个由线性探测放到下一个槽位
+        small.put(1, 42);
+        small.put(9, 43);
+        System.out.println("colliding hash 1: " + small.get(1, -1) + ", hash 9: " + small.get(9, -1));
+
+        // 随机走子，局面大量重复，按局面缓存评估结果
+        TranspositionTable table = new TranspositionTable(1 << 16);
+        SplittableRandom random = new SplittableRandom(7);
+        int[] occupied = new int[Chessboard.SQUARES];
+        long evaluations = 0;
+        long begin = System.nanoTime();
+        for (int game = 0; game < 2000; game++) {
+            Chessboard position = new Chessboard();
+            for (int ply = 0; ply < 40; ply++) {
+                int count = 0;
+                for (int square = 0; square < Chessboard.SQUARES; square++) {
+                    if (position.getId(square) != Chessboard.EMPTY) {
+                        occupied[count++] = square;
+                    }
+                }
+                // 只在少数几个格子之间移动，模拟搜索中的重复局面
+                int source = occupied[random.nextInt(Math.min(count, 4))];
+                int target = Chessboard.square(random.nextInt(3), 4);
+                if (source != target) {
+                    position.move(source, target);
+                }
+                long value = table.get(position.getHash(), Long.MIN_VALUE);
+                if (value == Long.MIN_VALUE) {
+                    value = evaluate(position);
+                    evaluations++;
+                    table.put(position.getHash(), value);
+                }
+            }
+        }
+        long nanos = System.nanoTime() - begin;
+        System.out.printf("%d lookups, %d evaluations in %d ms, %s%n", 2000 * 40, evaluations, nanos / 1_000_000, table);
+    }
+
+    /**
+     * 模拟开销较大的局面评估
+     */
+    private static long evaluate(Chessboard board) {
+        long score = 0;
+        for (int square = 0; square < Chessboard.SQUARES; square++) {
+            byte id = board.getId(square);
+            if (id != Chessboard.EMPTY) {
+                score += (long) id * (square + 1);
+            }
+        }
+        return score;
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.flyweight;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist 随机数：每个 (享元编号, 格子) 一个 64 位随机数，局面的 hash 是所有棋子对应随机数的异或
+ *   空格子（编号 0）的随机数为 0，放置、移除棋子都只是一次异或
+ *   空棋盘的 hash 是一个随机常数，有棋子的局面 hash 仍然可能为 0，由置换表自己处理
+ */
+final class Zobrist {
+    private static final long[] KEYS = new long[(FlyweightFactory.MAX_ID + 1) * Chessboard.SQUARES];
+    static final long EMPTY_BOARD;
+
+    static {
+        // 固定种子，同一个局面在不同进程中的 hash 相同
+        SplittableRandom random = new SplittableRandom(0x5A0B_2157L);
+        for (int i = Chessboard.SQUARES; i < KEYS.length; i++) {
+            KEYS[i] = random.nextLong();
+        }
+        EMPTY_BOARD = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    static long key(byte id, int square) {
+        return KEYS[id * Chessboard.SQUARES + square];
+    }
+
+    /**
+     * 重新计算整个棋盘的 hash，用于校验增量更新
+     * @param board
+     * @return
+     */
+    static long hashOf(Chessboard board) {
+        long hash = EMPTY_BOARD;
+        for (int square = 0; square < Chessboard.SQUARES; square++) {
+            hash ^= key(board.getId(square), square);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,248 @@
+package org.example.interprete;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 批量执行：每个脚本在自己的虚拟线程中执行，输出写入自己的缓冲区，不再共用 System.out
+ *   提交时先获取信号量，同时执行的脚本数不超过 maxConcurrency，提交线程在达到上限时阻塞，
+ *   不会一次创建几万个等待中的线程
+ *
+ *   编译结果通过 ProgramCache 复用，同样的脚本在批次内、批次之间都只解析一次
+ *   BatchRunner 本身是线程安全的，可以同时执行多个批次
+ */
+public class BatchRunner {
+    private final int maxConcurrency;
+    private final ProgramCache cache;
+
+    /**
+     * @param maxConcurrency 同时执行的脚本数上限
+     */
+    public BatchRunner(int maxConcurrency) {
+        this(maxConcurrency, new ProgramCache(1024));
+    }
+
+    public BatchRunner(int maxConcurrency, ProgramCache cache) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.cache = cache;
+    }
+
+    /**
+     * 执行一批脚本，所有脚本执行结束后返回
+     * @param scripts
+     * @return 结果与 scripts 一一对应
+     * @throws InterruptedException 等待信号量时被中断，已经提交的脚本会执行完
+     */
+    public BatchResult run(List<String> scripts) throws InterruptedException {
+        ScriptResult[] results = new ScriptResult[scripts.size()];
+        Semaphore permits = new Semaphore(maxConcurrency);
+        long begin = System.nanoTime();
+        // close() 等待所有虚拟线程结束，之后 results 对当前线程可见
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < results.length; i++) {
+                final int index = i;
+                final String text = scripts.get(i);
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        results[index] = runOne(text);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+        return new BatchResult(results, System.nanoTime() - begin);
+    }
+
+    private ScriptResult runOne(String text) {
+        long begin = System.nanoTime();
+        StringWriter writer = new StringWriter();
+        try {
+            cache.get(text).run(new WriterSink(writer));
+            return new ScriptResult(writer.toString(), System.nanoTime() - begin, null);
+        } catch (Throwable e) {
+            // 包括 Error（比如嵌套过深的脚本导致 StackOverflowError），否则异常被执行器吞掉，结果为空，整个批次无法汇总
+            return new ScriptResult(writer.toString(), System.nanoTime() - begin, e);
+        }
+    }
+
+    /**
+     * 单个脚本的执行结果
+     */
+    public static final class ScriptResult {
+        private final String output;
+        private final long nanos;
+        private final Throwable error;
+
+        ScriptResult(String output, long nanos, Throwable error) {
+            this.output = output;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        public String getOutput() {
+            return output;
+        }
+
+        /**
+         * 从开始编译（或命中缓存）到执行结束的耗时，不包括等待信号量的时间
+         * @return
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * 执行失败时的异常，成功时为 null
+         * @return
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    /**
+     * 一个批次的结果和汇总统计
+     */
+    public static final class BatchResult {
+        private final ScriptResult[] results;
+        private final long wallNanos;
+        private final long[] sortedLatencies;
+        private final int failures;
+
+        BatchResult(ScriptResult[] results, long wallNanos) {
+            this.results = results;
+            this.wallNanos = wallNanos;
+            this.sortedLatencies = new long[results.length];
+            int failures = 0;
+            for (int i = 0; i < results.length; i++) {
+                sortedLatencies[i] = results[i].getNanos();
+                if (!results[i].isSuccess()) {
+                    failures++;
+                }
+            }
+            this.failures = failures;
+            Arrays.sort(sortedLatencies);
+        }
+
+        public List<ScriptResult> getResults() {
+            return List.of(results);
+        }
+
+        public ScriptResult get(int index) {
+            return results[index];
+        }
+
+        public int size() {
+            return results.length;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * 每秒执行的脚本数
+         * @return
+         */
+        public double getThroughput() {
+            return wallNanos == 0 ? 0 : results.length * 1_000_000_000.0 / wallNanos;
+        }
+
+        /**
+         * 延迟的百分位数
+         * @param percentile 0 到 100
+         * @return 纳秒，批次为空时返回 0
+         */
+        public long getLatencyPercentile(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, Math.min(index, sortedLatencies.length - 1))];
+        }
+
+        public long getMeanLatency() {
+            long sum = 0;
+            for (long latency : sortedLatencies) {
+                sum += latency;
+            }
+            return sortedLatencies.length == 0 ? 0 : sum / sortedLatencies.length;
+        }
+
+        public long getMaxLatency() {
+            return sortedLatencies.length == 0 ? 0 : sortedLatencies[sortedLatencies.length - 1];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d scripts (%d failed) in %d ms, %.0f scripts/s, latency us: mean %d, p50 %d, p90 %d, p99 %d, max %d",
+                    results.length, failures, wallNanos / 1_000_000, getThroughput(), getMeanLatency() / 1000,
+                    getLatencyPercentile(50) / 1000, getLatencyPercentile(90) / 1000,
+                    getLatencyPercentile(99) / 1000, getMaxLatency() / 1000);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int count = 20000;
+        List<String> scripts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // 200 种不同的脚本，模拟线上大量重复提交的情况
+            int variant = i % 200;
+            scripts.add("PROGRAM PRINTLN job-" + variant
+                    + " FOR i FROM 1 TO " + (variant % 20 + 5) + " PRINTLN row-i FOR j FROM 1 TO 4 PRINTLN cell-i-j END END"
+                    + " PRINTLN done END");
+        }
+
+        // 原来的方式：单线程逐个解析、解释执行
+        long begin = System.nanoTime();
+        for (String script : scripts) {
+            ProgramExpression expression = new ProgramExpression(script);
+            expression.interpret(expression.newFrame(new CountingSink()));
+        }
+        System.out.printf("sequential: %d scripts in %d ms%n", count, (System.nanoTime() - begin) / 1_000_000);
+
+        BatchRunner runner = new BatchRunner(256);
+        for (int round = 1; round <= 3; round++) {
+            BatchResult result = runner.run(scripts);
+            System.out.println("round " + round + ": " + result);
+        }
+
+        // 每个脚本的输出互不干扰
+        BatchResult result = runner.run(scripts.subList(0, 3));
+        StringWriter expected = new StringWriter();
+        ProgramExpression first = new ProgramExpression(scripts.get(0));
+        first.interpret(first.newFrame(new WriterSink(expected)));
+        System.out.println("same output: " + expected.toString().equals(result.get(0).getOutput()));
+        System.out.print(result.get(2).getOutput());
+
+        // 嵌套过深的脚本栈溢出，只有这个脚本失败，批次照常汇总
+        StringBuilder deep = new StringBuilder("PROGRAM");
+        for (int i = 0; i < 100_000; i++) {
+            deep.append(" FOR i FROM 1 TO 1");
+        }
+        for (int i = 0; i < 100_000; i++) {
+            deep.append(" END");
+        }
+        deep.append(" END");
+        BatchResult failed = runner.run(List.of(scripts.get(0), deep.toString()));
+        System.out.println(failed.getFailures() + " failed: " + failed.get(1).getError().getClass().getSimpleName());
+    }
+}
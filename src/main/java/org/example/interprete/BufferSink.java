@@ -0,0 +1,37 @@
+package org.example.interprete;
+
+/**
+ * 缓冲到内存，每行以 '\n' 结尾，用于并行执行时每一段的输出，执行完成后按顺序合并到真正的输出
+ */
+class BufferSink implements OutputSink {
+    private final StringBuilder buffer = new StringBuilder();
+    private int lines;
+
+    @Override
+    public void println(CharSequence line) {
+        buffer.append(line).append('\n');
+        lines++;
+    }
+
+    @Override
+    public void writeLines(CharSequence block, int lineCount) {
+        buffer.append(block);
+        lines += lineCount;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * 把缓冲的内容整块写入目标输出
+     * @param target
+     */
+    public void drainTo(OutputSink target) {
+        if (lines > 0) {
+            target.writeLines(buffer, lines);
+        }
+        buffer.setLength(0);
+        lines = 0;
+    }
+}
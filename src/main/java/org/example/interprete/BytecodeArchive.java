@@ -0,0 +1,173 @@
+package org.example.interprete;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 预编译脚本归档：多个 BytecodeProgram 保存在同一个文件中
+ *   打开时只做一次内存映射并读取索引，具体程序第一次使用时才从映射内存中反序列化，
+ *   常驻进程启动时可以加载成千上万个脚本，不需要分词和解析
+ *
+ *   格式（大端）：
+ *     int magic, short version, int 程序个数,
+ *     索引：每个程序 (int 名称字节数, UTF-8 名称, long 偏移, int 长度),
+ *     各个程序的 BytecodeProgram 二进制内容
+ */
+public class BytecodeArchive {
+    static final int MAGIC = 0x49504241; // "IPBA"
+    static final short VERSION = 1;
+
+    private final MappedByteBuffer buffer;
+    private final Map<String, long[]> index;
+    private final Map<String, BytecodeProgram> loaded = new ConcurrentHashMap<>();
+
+    private BytecodeArchive(MappedByteBuffer buffer, Map<String, long[]> index) {
+        this.buffer = buffer;
+        this.index = index;
+    }
+
+    /**
+     * 写入归档
+     * @param path
+     * @param programs 名称 -> 程序
+     */
+    public static void write(Path path, Map<String, BytecodeProgram> programs) {
+        List<byte[]> names = new ArrayList<>();
+        List<byte[]> payloads = new ArrayList<>();
+        long headerSize = Integer.BYTES + Short.BYTES + Integer.BYTES;
+        for (Map.Entry<String, BytecodeProgram> entry : programs.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            payloads.add(entry.getValue().toBytes());
+            headerSize += Integer.BYTES + name.length + Long.BYTES + Integer.BYTES;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(names.size());
+            long offset = headerSize;
+            for (int i = 0; i < names.size(); i++) {
+                out.writeInt(names.get(i).length);
+                out.write(names.get(i));
+                out.writeLong(offset);
+                out.writeInt(payloads.get(i).length);
+                offset += payloads.get(i).length;
+            }
+            for (byte[] payload : payloads) {
+                out.write(payload);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 映射归档文件并读取索引
+     * @param path
+     * @return
+     */
+    public static BytecodeArchive open(Path path) {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("archive is larger than 2GB: " + path);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("not a bytecode archive: " + path);
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported archive version " + version);
+        }
+        int count = buffer.getInt();
+        Map<String, long[]> index = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            long offset = buffer.getLong();
+            int length = buffer.getInt();
+            index.put(new String(name, StandardCharsets.UTF_8), new long[]{offset, length});
+        }
+        return new BytecodeArchive(buffer, index);
+    }
+
+    /**
+     * 获取程序，第一次获取时从映射内存中反序列化
+     * @param name
+     * @return 不存在时返回 null
+     */
+    public BytecodeProgram get(String name) {
+        long[] location = index.get(name);
+        if (location == null) {
+            return null;
+        }
+        return loaded.computeIfAbsent(name, key -> {
+            ByteBuffer slice = buffer.slice((int) location[0], (int) location[1]);
+            return BytecodeProgram.readFrom(slice);
+        });
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int scripts = 5000;
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (int i = 0; i < scripts; i++) {
+            sources.put("script-" + i, "PROGRAM PRINTLN begin-" + i
+                    + " FOR i FROM 1 TO " + (i % 50 + 10) + " PRINTLN line-i FOR j FROM 1 TO 3 PRINTLN cell-i-j END END"
+                    + " PRINTLN end END");
+        }
+
+        Map<String, BytecodeProgram> programs = new LinkedHashMap<>();
+        Path path = Files.createTempFile("scripts", ".ipba");
+        try {
+            BytecodeArchive archive = null;
+            for (int round = 1; round <= 3; round++) {
+                long begin = System.nanoTime();
+                sources.forEach((name, text) -> programs.put(name, BytecodeProgram.compile(text)));
+                long compileNanos = System.nanoTime() - begin;
+                BytecodeArchive.write(path, programs);
+
+                begin = System.nanoTime();
+                archive = BytecodeArchive.open(path);
+                for (String name : sources.keySet()) {
+                    archive.get(name);
+                }
+                long loadNanos = System.nanoTime() - begin;
+                System.out.printf("round %d, %d scripts: parse + compile %d ms, load from archive (%d bytes) %d ms%n",
+                        round, scripts, compileNanos / 1_000_000, Files.size(path), loadNanos / 1_000_000);
+            }
+
+            CountingSink fromText = new CountingSink();
+            CompiledProgram.compile(sources.get("script-7")).run(fromText);
+            CountingSink fromArchive = new CountingSink();
+            archive.get("script-7").run(fromArchive);
+            System.out.println("script-7 lines: compiled " + fromText.getLines() + ", bytecode " + fromArchive.getLines());
+            archive.get("script-0").run(new WriterSink(new PrintWriter(System.out)));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package org.example.interprete;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 字节码形式的程序：优化后的语法树降级成一个小型栈虚拟机的指令序列
+ *   指令和常量都可以序列化成紧凑的二进制格式保存到磁盘，进程启动时直接加载，不需要再分词和解析
+ *
+ *   指令（每个 int 一个操作码，后面跟固定个数的 int 操作数）：
+ *     ICONST v         压入常量 v
+ *     STORE s          弹出栈顶，写入槽位 s
+ *     LOAD s           压入槽位 s 的值
+ *     INC s            槽位 s 加 1
+ *     GOTO pc          跳转
+ *     IF_EQ pc         弹出 b、a，a == b 时跳转
+ *     PRINT_BLOCK k    输出常量池中第 k 个文本块
+ *     PRINT_TEMPLATE t 按当前槽位输出第 t 个模板
+ *     REPEAT_BLOCK k hi lo  重复输出第 k 个文本块 (hi << 32 | lo) 次
+ *     HALT             结束
+ *
+ *   FOR 循环的范围在编译时已知，降级为：
+ *       ICONST start; STORE s; L: body; LOAD s; ICONST end; IF_EQ exit; INC s; GOTO L; exit:
+ *   PARFOR 在字节码中按顺序执行，输出相同
+ *
+ *   二进制格式（大端）：
+ *     int magic, short version, int frameSize, int maxStack,
+ *     int 常量个数, 每个常量 (int 行数, int 字节数, UTF-8 字节),
+ *     int 模板个数, 每个模板 (int 变量个数 n, n + 1 个文本片段 (int 字节数, UTF-8 字节), n 个 int 槽位),
+ *     int 指令长度, 指令 int 序列
+ */
+public class BytecodeProgram {
+    static final int MAGIC = 0x49504243; // "IPBC"
+    static final short VERSION = 1;
+
+    static final int HALT = 0;
+    static final int ICONST = 1;
+    static final int STORE = 2;
+    static final int LOAD = 3;
+    static final int INC = 4;
+    static final int GOTO = 5;
+    static final int IF_EQ = 6;
+    static final int PRINT_BLOCK = 7;
+    static final int PRINT_TEMPLATE = 8;
+    static final int REPEAT_BLOCK = 9;
+
+    private final int frameSize;
+    private final int maxStack;
+    private final String[] constants;
+    private final int[] lineCounts;
+    private final Template[] templates;
+    private final int[] code;
+
+    BytecodeProgram(int frameSize, int maxStack, String[] constants, int[] lineCounts, Template[] templates, int[] code) {
+        this.frameSize = frameSize;
+        this.maxStack = maxStack;
+        this.constants = constants;
+        this.lineCounts = lineCounts;
+        this.templates = templates;
+        this.code = code;
+    }
+
+    /**
+     * 解析、优化后降级成字节码
+     * @param text
+     * @return
+     */
+    public static BytecodeProgram compile(String text) {
+        ProgramExpression optimized = new ProgramExpression(text).optimize(new Optimizer());
+        return new Lowering().lower(optimized);
+    }
+
+    /**
+     * 执行，每次执行使用自己的栈帧和操作数栈，同一个程序可以被多个线程同时执行
+     * @param outputSink
+     */
+    public void run(OutputSink outputSink) {
+        Frame frame = new Frame(frameSize, outputSink);
+        int[] slots = frame.getSlots();
+        int[] stack = new int[maxStack];
+        int sp = 0;
+        int pc = 0;
+        final int[] code = this.code;
+        while (true) {
+            switch (code[pc]) {
+                case ICONST:
+                    stack[sp++] = code[pc + 1];
+                    pc += 2;
+                    break;
+                case STORE:
+                    slots[code[pc + 1]] = stack[--sp];
+                    pc += 2;
+                    break;
+                case LOAD:
+                    stack[sp++] = slots[code[pc + 1]];
+                    pc += 2;
+                    break;
+                case INC:
+                    slots[code[pc + 1]]++;
+                    pc += 2;
+                    break;
+                case GOTO:
+                    pc = code[pc + 1];
+                    break;
+                case IF_EQ:
+                    sp -= 2;
+                    pc = stack[sp] == stack[sp + 1] ? code[pc + 1] : pc + 2;
+                    break;
+                case PRINT_BLOCK:
+                    outputSink.writeLines(constants[code[pc + 1]], lineCounts[code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case PRINT_TEMPLATE:
+                    outputSink.println(frame.getTokenContent(templates[code[pc + 1]]));
+                    pc += 2;
+                    break;
+                case REPEAT_BLOCK: {
+                    String block = constants[code[pc + 1]];
+                    int lineCount = lineCounts[code[pc + 1]];
+                    long count = ((long) code[pc + 2] << 32) | (code[pc + 3] & 0xFFFFFFFFL);
+                    for (long i = 0; i < count; i++) {
+                        outputSink.writeLines(block, lineCount);
+                    }
+                    pc += 4;
+                    break;
+                }
+                case HALT:
+                    outputSink.flush();
+                    return;
+                default:
+                    throw new IllegalStateException("bad opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+
+    /**
+     * 序列化
+     * @return
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(frameSize);
+            out.writeInt(maxStack);
+            out.writeInt(constants.length);
+            for (int i = 0; i < constants.length; i++) {
+                out.writeInt(lineCounts[i]);
+                writeString(out, constants[i]);
+            }
+            out.writeInt(templates.length);
+            for (Template template : templates) {
+                int[] slots = template.getSlots();
+                out.writeInt(slots.length);
+                for (String literal : template.getLiterals()) {
+                    writeString(out, literal);
+                }
+                for (int slot : slots) {
+                    out.writeInt(slot);
+                }
+            }
+            out.writeInt(code.length);
+            for (int instruction : code) {
+                out.writeInt(instruction);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * 从 buffer 的当前位置反序列化，buffer 可以是内存映射文件的一段
+     * @param buffer
+     * @return
+     */
+    public static BytecodeProgram readFrom(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("not a bytecode program");
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("unsupported bytecode version " + version);
+        }
+        int frameSize = buffer.getInt();
+        int maxStack = buffer.getInt();
+        String[] constants = new String[buffer.getInt()];
+        int[] lineCounts = new int[constants.length];
+        for (int i = 0; i < constants.length; i++) {
+            lineCounts[i] = buffer.getInt();
+            constants[i] = readString(buffer);
+        }
+        Template[] templates = new Template[buffer.getInt()];
+        for (int i = 0; i < templates.length; i++) {
+            int[] slots = new int[buffer.getInt()];
+            String[] literals = new String[slots.length + 1];
+            for (int j = 0; j < literals.length; j++) {
+                literals[j] = readString(buffer);
+            }
+            for (int j = 0; j < slots.length; j++) {
+                slots[j] = buffer.getInt();
+            }
+            templates[i] = Template.of(literals, slots);
+        }
+        int[] code = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(code);
+        buffer.position(buffer.position() + code.length * Integer.BYTES);
+        return new BytecodeProgram(frameSize, maxStack, constants, lineCounts, templates, code);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        ByteBuffer slice = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return StandardCharsets.UTF_8.decode(slice).toString();
+    }
+
+    /**
+     * 把优化后的语法树降级成指令
+     */
+    private static final class Lowering {
+        private final List<String> constants = new ArrayList<>();
+        private final List<Integer> lineCounts = new ArrayList<>();
+        private final List<Template> templates = new ArrayList<>();
+        private int[] code = new int[64];
+        private int length;
+
+        BytecodeProgram lower(ProgramExpression program) {
+            if (program.getExpressions() == null) {
+                emit(PRINT_BLOCK, constant(ProgramExpression.MISSING_PROGRAM + "\n", 1));
+            } else {
+                lower(program.getExpressions());
+            }
+            emit(HALT);
+            int[] lineCountArray = new int[lineCounts.size()];
+            for (int i = 0; i < lineCountArray.length; i++) {
+                lineCountArray[i] = lineCounts.get(i);
+            }
+            // FOR 循环的比较最多同时有两个操作数
+            return new BytecodeProgram(program.getFrameSize(), 2, constants.toArray(new String[0]),
+                    lineCountArray, templates.toArray(new Template[0]), Arrays.copyOf(code, length));
+        }
+
+        private void lower(ExpressionNode node) {
+            if (node instanceof CommandExperssion) {
+                lower(((CommandExperssion) node).getExpressions());
+            } else if (node instanceof ListExpression) {
+                for (ExpressionNode child : ((ListExpression) node).getList()) {
+                    lower(child);
+                }
+            } else if (node instanceof ForExpression) {
+                ForExpression loop = (ForExpression) node;
+                if (loop.getStartIndex() > loop.getEndIndex()) {
+                    return;
+                }
+                int slot = loop.getSlot();
+                emit(ICONST, loop.getStartIndex());
+                emit(STORE, slot);
+                int top = length;
+                lower(loop.getBody());
+                emit(LOAD, slot);
+                emit(ICONST, loop.getEndIndex());
+                emit(IF_EQ, -1);
+                int exitOperand = length - 1;
+                emit(INC, slot);
+                emit(GOTO, top);
+                code[exitOperand] = length;
+            } else if (node instanceof PrimitiveExpression) {
+                PrimitiveExpression primitive = (PrimitiveExpression) node;
+                if (!primitive.isPrintln()) {
+                    return;
+                }
+                Template template = primitive.getTemplate();
+                if (template.isConstant()) {
+                    emit(PRINT_BLOCK, constant(template + "\n", 1));
+                } else {
+                    templates.add(template);
+                    emit(PRINT_TEMPLATE, templates.size() - 1);
+                }
+            } else if (node instanceof ConstantExpression) {
+                ConstantExpression constant = (ConstantExpression) node;
+                emit(PRINT_BLOCK, constant(constant.getBlock(), constant.getLineCount()));
+            } else if (node instanceof RepeatExpression) {
+                RepeatExpression repeat = (RepeatExpression) node;
+                int index = constant(repeat.getBody().getBlock(), repeat.getBody().getLineCount());
+                emit(REPEAT_BLOCK, index);
+                emit((int) (repeat.getCount() >>> 32));
+                emit((int) repeat.getCount());
+            } else {
+                throw new IllegalArgumentException("cannot lower " + node.getClass().getSimpleName());
+            }
+        }
+
+        private int constant(String block, int lineCount) {
+            constants.add(block);
+            lineCounts.add(lineCount);
+            return constants.size() - 1;
+        }
+
+        private void emit(int opcode, int operand) {
+            emit(opcode);
+            emit(operand);
+        }
+
+        private void emit(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, length * 2);
+            }
+            code[length++] = value;
+        }
+    }
+}
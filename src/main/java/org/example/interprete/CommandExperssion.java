@@ -0,0 +1,39 @@
+package org.example.interprete;
+
+class CommandExperssion implements IExpressions {
+    private IExpressions expressions;
+    /**
+     * 构造方法将待解析的context传入
+     *
+     * @param context
+     */
+    public CommandExperssion(Context context) {
+        this.parse(context);
+    }
+    public void parse(Context context) {
+        // 判断当前命令类别 在此只对For和最原始命令进行区分
+        if (context.equalsWithCommand("FOR") || context.equalsWithCommand("PARFOR")) {
+            // 创建For表达式进行解析
+            expressions = new ForExpression(context);
+        } else {
+            // 创建原始命令表达式进行内容解析
+            expressions = new PrimitiveExpression(context);
+        }
+    }
+    /**
+     * 解析内容
+     */
+    @Override
+    public void interpret(Frame frame) {
+        // 解析内容
+        this.expressions.interpret(frame);
+    }
+    @Override
+    public Executable compile() {
+        // 命令类别在解析时已经确定，编译后直接使用具体表达式，不再多一层转发
+        return this.expressions.compile();
+    }
+    IExpressions getExpressions() {
+        return this.expressions;
+    }
+}
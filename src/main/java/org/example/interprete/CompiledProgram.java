@@ -0,0 +1,115 @@
+package org.example.interprete;
+
+import java.io.PrintWriter;
+import java.nio.file.Path;
+
+/**
+ * 编译后的程序：解析只在 compile 时做一次，经过 Optimizer 优化后，得到一棵由 lambda 组成的闭包树
+ *   run() 直接执行闭包树，不再经过 StringTokenizer 分词、ListExpression 的迭代器和 IExpressions 的虚调用
+ *
+ *   适合同一段脚本需要反复执行的场景
+ *
+ *   编译结果是不可变的，每次 run 创建自己的栈帧，同一个程序可以被多个线程同时执行，不需要加锁
+ */
+public class CompiledProgram {
+    // 闭包树的根节点
+    private final Executable root;
+    // 执行时需要的栈帧大小
+    private final int frameSize;
+    // 优化统计
+    private final Optimizer.Report optimizationReport;
+    // 性能分析，为 null 时不分析
+    private final Profiler profiler;
+
+    private CompiledProgram(Executable root, int frameSize, Optimizer.Report optimizationReport, Profiler profiler) {
+        this.root = root;
+        this.frameSize = frameSize;
+        this.optimizationReport = optimizationReport;
+        this.profiler = profiler;
+    }
+
+    /**
+     * 解析并编译程序文本
+     * @param text
+     * @return
+     */
+    public static CompiledProgram compile(String text) {
+        return compile(new ProgramExpression(text), null);
+    }
+
+    /**
+     * 解析并编译程序文本，优化后的每个节点都带上计时
+     *   计数在多次 run 之间累加，需要时调用 getProfiler().printReport() 输出报告
+     * @param text
+     * @param profiler
+     * @return
+     */
+    public static CompiledProgram compile(String text, Profiler profiler) {
+        return compile(new ProgramExpression(text), profiler);
+    }
+
+    /**
+     * 解析并编译脚本文件，文件通过内存映射读取，不会整体读入堆中
+     * @param path
+     * @return
+     */
+    public static CompiledProgram compile(Path path) {
+        return compile(new ProgramExpression(new Context(new MappedTokenSource(path))), null);
+    }
+
+    private static CompiledProgram compile(ProgramExpression expression, Profiler profiler) {
+        Optimizer optimizer = new Optimizer();
+        ProgramExpression optimized = expression.optimize(optimizer);
+        if (profiler != null) {
+            optimized = optimized.profile(profiler);
+        }
+        return new CompiledProgram(optimized.compile(), optimized.getFrameSize(), optimizer.getReport(), profiler);
+    }
+
+    /**
+     * 编译时的优化统计，没有以 PROGRAM 开始的程序不做优化，返回 null
+     * @return
+     */
+    public Optimizer.Report getOptimizationReport() {
+        return this.optimizationReport;
+    }
+
+    /**
+     * 编译时指定的性能分析，没有指定时返回 null
+     * @return
+     */
+    public Profiler getProfiler() {
+        return this.profiler;
+    }
+
+    /**
+     * 执行编译好的程序，输出到 System.out
+     */
+    public void run() {
+        this.run(SystemOutSink.INSTANCE);
+    }
+
+    /**
+     * 执行编译好的程序，输出到指定的 sink
+     * @param outputSink
+     */
+    public void run(OutputSink outputSink) {
+        this.root.execute(new Frame(this.frameSize, outputSink));
+        outputSink.flush();
+    }
+
+    public static void main(String[] args) {
+        String str = "PROGRAM PRINTLN start... FOR i FROM 1 TO 3 PRINTLN i END PRINTLN end... END";
+        CompiledProgram program = CompiledProgram.compile(str);
+        // 同一个程序可以重复执行，每次执行都不会重新解析
+        program.run();
+        program.run();
+
+        // 批量写入，缓冲区满或者执行结束时才真正写出
+        program.run(new WriterSink(new PrintWriter(System.out), 64));
+        // 只计数不输出
+        CountingSink countingSink = new CountingSink();
+        program.run(countingSink);
+        System.out.println("lines: " + countingSink.getLines() + ", chars: " + countingSink.getChars());
+    }
+}
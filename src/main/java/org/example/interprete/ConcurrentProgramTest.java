@@ -0,0 +1,63 @@
+package org.example.interprete;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 并发压力测试：同一个 CompiledProgram 在多个线程中同时执行
+ *   每个线程每次执行都写入自己的 StringWriter，和单线程执行的结果逐字比较，
+ *   如果栈帧或者输出被线程共享，循环变量会互相覆盖，输出就会错乱
+ */
+public class ConcurrentProgramTest {
+    private static final int THREADS = 16;
+    private static final int RUNS_PER_THREAD = 200;
+
+    public static void main(String[] args) throws Exception {
+        String str = "PROGRAM PRINTLN start... " +
+                "FOR i FROM 1 TO 20 FOR j FROM 1 TO 20 PRINTLN i-j END END " +
+                "FOR k FROM 100 TO 120 PRINTLN k END " +
+                "PRINTLN end... END";
+        CompiledProgram program = CompiledProgram.compile(str);
+        String expected = render(program);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch startSignal = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                startSignal.await();
+                int mismatches = 0;
+                for (int run = 0; run < RUNS_PER_THREAD; run++) {
+                    if (!expected.equals(render(program))) {
+                        mismatches++;
+                    }
+                }
+                return mismatches;
+            }));
+        }
+        long begin = System.nanoTime();
+        startSignal.countDown();
+        int mismatches = 0;
+        for (Future<Integer> future : futures) {
+            mismatches += future.get();
+        }
+        long millis = (System.nanoTime() - begin) / 1_000_000;
+        executor.shutdown();
+
+        System.out.println(THREADS + " threads x " + RUNS_PER_THREAD + " runs in " + millis + " ms, mismatches: " + mismatches);
+        if (mismatches > 0) {
+            throw new IllegalStateException("outputs of concurrent runs are not isolated");
+        }
+    }
+
+    private static String render(CompiledProgram program) {
+        StringWriter writer = new StringWriter();
+        program.run(new WriterSink(writer));
+        return writer.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.interprete;
+
+/**
+ * 优化器生成的常量输出：一行或多行预先计算好的文本，每行以 '\n' 结尾
+ */
+class ConstantExpression implements ExpressionNode {
+    private final String block;
+    private final int lineCount;
+    // 第一个折叠进来的命令在源中的位置
+    private final long position;
+
+    ConstantExpression(String block, int lineCount, long position) {
+        this.block = block;
+        this.lineCount = lineCount;
+        this.position = position;
+    }
+
+    @Override
+    public void interpret(Frame frame) {
+        frame.getOutputSink().writeLines(block, lineCount);
+    }
+
+    @Override
+    public Executable compile() {
+        final String block = this.block;
+        final int lineCount = this.lineCount;
+        return frame -> frame.getOutputSink().writeLines(block, lineCount);
+    }
+
+    String getBlock() {
+        return block;
+    }
+
+    int getLineCount() {
+        return lineCount;
+    }
+
+    long getPosition() {
+        return position;
+    }
+
+    ConstantExpression concat(ConstantExpression other) {
+        return new ConstantExpression(block + other.block, lineCount + other.lineCount, position);
+    }
+
+    ConstantExpression repeat(int count, long position) {
+        return new ConstantExpression(block.repeat(count), lineCount * count, position);
+    }
+}
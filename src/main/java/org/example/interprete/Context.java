@@ -30,7 +30,6 @@ package org.example.interprete;
  *     比如R=R1+R2，给R1赋值100，给R2赋值200。这些信息需要存放到环境角色中，一般使用Map来充当环境角色就足够。
  */
 
-import java.beans.Expression;
 import java.util.*;
 
 /**我们自己设计一种语言来说明这一模式
@@ -38,33 +37,45 @@ import java.util.*;
         （2）该语言以PROGRAM开头，END结尾
         （3）PRINTLN表示打印一行并换行
         （4）使用FOR…FROM…TO…END表示循环
+        （5）使用PARFOR…FROM…TO…END表示可以并行执行的循环，输出顺序与FOR相同
 
    引用自：https://www.cnblogs.com/fantongxue/p/16802225.html
 **/
 public class Context {
-    private final StringTokenizer stringTokenizer;
-    // 当前命令
-    private String currentToken;
-    // 用来存储动态变化信息内容
-    private final Map<String, Object> map = new HashMap<>();
+    // 词法单元来源，只记录当前单词的位置，需要时才创建 String
+    private final TokenSource tokenSource;
+    // 解析时的变量作用域，下标就是变量在栈帧中的槽位
+    private final List<String> scope = new ArrayList<>();
+    // 解析过程中同时存在的最大变量个数，即栈帧大小
+    private int frameSize;
     /**
      * 构造方法设置解析内容
      * @param text
      */
     public Context(String text) {
         // 使用空格分隔待解析文本内容
-        this.stringTokenizer = new StringTokenizer(text);
+        this(new StringTokenSource(text));
     }
     /**
-     * 解析文本
+     * 从其他来源解析，比如内存映射的脚本文件
+     * @param tokenSource
      */
-    public String next() {
-        if (this.stringTokenizer.hasMoreTokens()) {
-            currentToken = this.stringTokenizer.nextToken();
-        } else {
-            currentToken = null;
-        }
-        return currentToken;
+    public Context(TokenSource tokenSource) {
+        this.tokenSource = tokenSource;
+    }
+    /**
+     * 解析文本，移动到下一个单词
+     * @return 没有更多单词时返回 false
+     */
+    public boolean next() {
+        return this.tokenSource.advance();
+    }
+    /**
+     * 是否还有当前命令
+     * @return
+     */
+    public boolean hasCurrentToken() {
+        return this.tokenSource.hasToken();
     }
     /**
      * 判断命令是否正确
@@ -72,295 +83,98 @@ public class Context {
      * @return
      */
     public boolean equalsWithCommand(String command) {
-        if (command == null || !command.equals(this.currentToken)) {
+        if (command == null || !this.tokenSource.matches(command)) {
             return false;
         }
         return true;
     }
     /**
-     * 获得当前命令内容
+     * 获得当前命令内容，每次调用都会创建 String，只在需要保留内容时使用
      * @return
      */
     public String getCurrentToken() {
-        return this.currentToken;
+        return this.tokenSource.text();
     }
     /**
-     * 获得节点的内容
+     * 把当前命令解析成 int
      * @return
+     * @throws NumberFormatException
      */
-    public String getTokenContent(String text) {
-        String str = text;
-        if (str != null) { // 替换map中的动态变化内容后返回 Iterator<String>
-            // 替换map中的动态变化内容后返回
-            Iterator<String> iterator = this.map.keySet().iterator();
-            while (iterator.hasNext()) {
-                String key = iterator.next();
-                Object obj = map.get(key);
-                str = str.replaceAll(key, obj.toString());
-            }
-        }
-        return str;
-    }
-    public void put(String key, Object value) {
-        this.map.put(key, value);
+    public int getCurrentInt() {
+        return this.tokenSource.parseInt();
     }
-    public void clear(String key) {
-        this.map.remove(key);
-    }
-    public static void main(String[] args) {
-        String str = "PROGRAM PRINTLN" +
-                " start... " +
-                "FOR i FROM 90 TO 104 " +
-                "PRINTLN i " +
-                "END PRINTLN" +
-                " end..." +
-                " END";
-        System.out.println("str:" + str);
-        // 创建PROGRAM表达式
-        IExpressions expressions = new ProgramExpression(str);
-        // 解释执行
-        expressions.interpret();
-    }
-}
-
-interface IExpressions {
-    /**
-     * 解析
-     * @param context
-     */
-    public void parse(Context context);
-    /**
-     * 执行方法
-     */
-    public void interpret();
-}
-
-class ProgramExpression implements IExpressions {
-    // 上下文环境
-    private final Context context;
-    // 当前命令
-    private final static String COMMAND = "PROGRAM";
-    // 存储下一个表达式引用
-    private IExpressions expressions;
     /**
-     * 构造方法将待解析的内容传入
-     *
-     * @param text
+     * 当前命令在源中的位置，用于性能分析等报告
+     * @return
      */
-    public ProgramExpression(String text) {
-        this.context = new Context(text);
-        this.parse(this.context);
-    }
-    @Override
-    public void parse(Context context) {
-        // 获取第一个命令节点
-        this.context.next();
+    public long getPosition() {
+        return this.tokenSource.position();
     }
     /**
-     * 实现解释方法
+     * 解析时声明一个循环变量，分配栈帧槽位
+     * 槽位按嵌套深度分配，并列的循环复用同一个槽位
+     * @param name
+     * @return 槽位下标
      */
-    @Override
-    public void interpret() {
-        // 判断是否是以PROGRAM 开始
-        if (!this.context.equalsWithCommand(COMMAND)) {
-            System.out.println("The '" + COMMAND + "' is Excepted For Start!");
-        } else {
-            // 是以PROGRAM 开始
-            this.context.next();
-            this.expressions = new ListExpression();
-            this.expressions.parse(this.context);
-            // ListExpression表达式开始解析
-            this.expressions.interpret();
-        }
+    public int declare(String name) {
+        this.scope.add(name);
+        this.frameSize = Math.max(this.frameSize, this.scope.size());
+        return this.scope.size() - 1;
     }
-}
-class ListExpression implements IExpressions {
-    private Context context;
-    private final ArrayList<IExpressions> list = new ArrayList<IExpressions>();
     /**
-     * 构造方法将待解析的context传入
-     *
-     * @param context
+     * 循环体解析结束，最内层变量离开作用域
      */
-    public void parse(Context context) {
-        this.context = context;
-        // 在ListExpression解析表达式中,循环解释语句中的每一个单词,直到终结符表达式或者异常情况退出
-        while (true) {
-            if (this.context.getCurrentToken() == null) {
-                // 获取当前节点如果为 null 则表示缺少END表达式
-                System.out.println("Error: The Experssion Missing 'END'! ");
-                break;
-            } else if (this.context.equalsWithCommand("END")) {
-                this.context.next();
-                // 解析正常结束
-                break;
-            } else {
-                // 建立Command 表达式
-                IExpressions expressions = new CommandExperssion(this.context);
-                // 添加到列表中
-                list.add(expressions);
-            }
-        }
+    public void undeclare() {
+        this.scope.remove(this.scope.size() - 1);
     }
     /**
-     * 实现解释方法
+     * 当前作用域内可见的变量名，同名变量只保留最内层的
+     * @return
      */
-    @Override
-    public void interpret() {
-        // 循环list列表中每一个表达式 解释执行
-        Iterator<IExpressions> iterator = list.iterator();
-        while (iterator.hasNext()) {
-            (iterator.next()).interpret();
+    public String[] visibleNames() {
+        List<String> names = new ArrayList<>();
+        for (int i = this.scope.size() - 1; i >= 0; i--) {
+            if (!names.contains(this.scope.get(i))) {
+                names.add(this.scope.get(i));
+            }
         }
+        return names.toArray(new String[0]);
     }
-}
-
-class CommandExperssion implements IExpressions {
-    private final Context context;
-    private IExpressions expressions;
     /**
-     * 构造方法将待解析的context传入
-     *
-     * @param context
+     * 与 visibleNames 一一对应的槽位
+     * @return
      */
-    public CommandExperssion(Context context) {
-        this.context = context;
-        this.parse(this.context);
-    }
-    public void parse(Context context) {
-        // 判断当前命令类别 在此只对For和最原始命令进行区分
-        if (this.context.equalsWithCommand("FOR")) {
-            // 创建For表达式进行解析
-            expressions = new ForExpression(this.context);
-        } else {
-            // 创建原始命令表达式进行内容解析
-            expressions = new PrimitiveExpression(this.context);
+    public int[] visibleSlots() {
+        String[] names = this.visibleNames();
+        int[] slots = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            slots[i] = this.scope.lastIndexOf(names[i]);
         }
+        return slots;
     }
     /**
-     * 解析内容
+     * 执行时需要的栈帧大小，解析完成后确定
+     * @return
      */
-    @Override
-    public void interpret() {
-        // 解析内容
-        this.expressions.interpret();
+    public int getFrameSize() {
+        return this.frameSize;
     }
-}
+    public static void main(String[] args) {
+        String str = "PROGRAM PRINTLN" +
+                " start... " +
+                "FOR i FROM 90 TO 104 " +
+                "PRINTLN i " +
+                "END PRINTLN" +
+                " end..." +
+                " END";
+        System.out.println("str:" + str);
+        // 创建PROGRAM表达式
+        ProgramExpression expressions = new ProgramExpression(str);
+        // 解释执行
+        expressions.interpret();
 
-class ForExpression implements IExpressions {
-    private final Context context;
-    // 存储当前索引key值
-    private String variable;
-    // 存储循环起始位置
-    private int start_index;
-    // 存储循环结束位置
-    private int end_index;
-    private IExpressions expressions;
-    /**
-     * 构造方法将待解析的context传入
-     *
-     * @param context
-     */
-    public ForExpression(Context context) {
-        this.context = context;
-        this.parse(this.context);
-    }
-    /**
-     * 解析表达式
-     */
-    @Override
-    public void parse(Context context) {
-        // 首先获取当前节点
-        this.context.next();
-        while (true) {
-            // 判断节点
-            if (this.context.equalsWithCommand("FROM")) {
-                // 设置开始索引内容
-                String nextStr = this.context.next();
-                try {
-                    this.start_index = Integer.parseInt(nextStr);
-                } catch (Exception e) {
-                    System.out
-                            .println("Error: After 'FROM' Expression Exist Error!Please Check the Format Of Expression is Correct!");
-                    break;
-                }
-                // 获取下一个节点
-                this.context.next();
-            } else if (this.context.equalsWithCommand("TO")) {
-                // 设置结束索引内容
-                String nextStr = this.context.next();
-                try {
-                    this.end_index = Integer.parseInt(nextStr);
-                } catch (Exception e) {
-                    System.out
-                            .println("Error: After 'TO' Expression Exist Error!Please Check the Format Of Expression is Correct!");
-                }
-                this.context.next();
-                break;
-            } else {
-                // 设置当前索引变量内容
-                if (this.variable == null) {
-                    this.variable = this.context.getCurrentToken();
-                }
-                // 获取下一个节点
-                this.context.next();
-            }
-        }
-        // 建立列表表达式
-        this.expressions = new ListExpression();
-        this.expressions.parse(this.context);
-    }
-    /**
-     * 实现解释方法
-     */
-    @Override
-    public void interpret() {
-        // 建立命令表达式
-        for (int x = this.start_index; x <= this.end_index; x++) {
-            // 设置变量内容
-            this.context.put("" + this.variable, x);
-            // 执行解释方法
-            this.expressions.interpret();
-        }
-        // 移除使用的临时变量内容
-        this.context.clear("" + this.variable);
+        // 编译成闭包树后可以反复执行，不再重复解析
+        CompiledProgram program = CompiledProgram.compile(str);
+        program.run();
     }
 }
-
-class PrimitiveExpression implements IExpressions {
-    private Context context;
-    // 节点名称
-    private String tokenName;
-    // 文本内容
-    private String text;
-    /**
-     * 构造方法将待解析的context传入
-     *
-     * @param context
-     */
-    public PrimitiveExpression(Context context) {
-        this.parse(context);
-    }
-    @Override
-    public void parse(Context context) {
-        this.context = context;
-        this.tokenName = this.context.getCurrentToken();
-        this.context.next();
-        if ("PRINTLN".equals(this.tokenName)) {
-            this.text = this.context.getCurrentToken();
-            this.context.next();
-        }
-    }
-    /**
-     * 实现解释方法
-     */
-    @Override
-    public void interpret() {
-        // 首先获取当前节点内容
-        if ("PRINTLN".equals(tokenName)) {
-            // 获得内容信息
-            // 打印内容
-            System.out.println(this.context.getTokenContent(this.text));
-        }
-    }
-}
\ No newline at end of file
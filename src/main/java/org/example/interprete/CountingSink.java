@@ -0,0 +1,33 @@
+package org.example.interprete;
+
+/**
+ * 丢弃输出，只统计行数和字符数，用于压测解释器本身
+ */
+class CountingSink implements OutputSink {
+    private long lines;
+    private long chars;
+
+    @Override
+    public void println(CharSequence line) {
+        lines++;
+        chars += line.length();
+    }
+
+    @Override
+    public void writeLines(CharSequence block, int lineCount) {
+        lines += lineCount;
+        chars += block.length() - lineCount;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getChars() {
+        return chars;
+    }
+}
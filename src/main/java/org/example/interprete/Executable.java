@@ -0,0 +1,11 @@
+package org.example.interprete;
+
+/**
+ * 编译后的可执行节点：每个表达式节点对应一个 lambda，执行时不再经过 IExpressions 的虚调用和分支判断
+ */
+@FunctionalInterface
+interface Executable {
+    Executable NOOP = frame -> { };
+
+    void execute(Frame frame);
+}
@@ -0,0 +1,18 @@
+package org.example.interprete;
+
+/**
+ * 语法树节点：可以解释执行，也可以编译成可执行节点
+ *   由 Context 解析得到的节点实现 IExpressions；优化器、性能分析在解析之后生成的节点不需要解析，只实现该接口
+ */
+interface ExpressionNode {
+    /**
+     * 执行方法
+     * @param frame 本次执行的栈帧，语法树本身不保存执行状态
+     */
+    void interpret(Frame frame);
+    /**
+     * 编译成可执行节点，解析阶段能确定的内容（分支、变量名、子节点）全部在这里确定
+     * @return
+     */
+    Executable compile();
+}
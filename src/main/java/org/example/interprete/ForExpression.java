@@ -0,0 +1,159 @@
+package org.example.interprete;
+
+class ForExpression implements IExpressions {
+    // 存储当前索引key值
+    private String variable;
+    // 变量在栈帧中的槽位，解析时确定
+    private int slot;
+    // 存储循环起始位置
+    private int start_index;
+    // 存储循环结束位置
+    private int end_index;
+    // PARFOR 循环，编译后拆分到 ForkJoinPool 中并行执行
+    private boolean parallel;
+    // FOR 命令在源中的位置
+    private long position;
+    private ListExpression expressions;
+    /**
+     * 构造方法将待解析的context传入
+     *
+     * @param context
+     */
+    public ForExpression(Context context) {
+        this.parse(context);
+    }
+    /**
+     * 复制循环，替换循环体，由优化器使用
+     *
+     * @param source
+     * @param body
+     */
+    ForExpression(ForExpression source, ListExpression body) {
+        this.variable = source.variable;
+        this.slot = source.slot;
+        this.start_index = source.start_index;
+        this.end_index = source.end_index;
+        this.parallel = source.parallel;
+        this.position = source.position;
+        this.expressions = body;
+    }
+    /**
+     * 解析表达式
+     */
+    @Override
+    public void parse(Context context) {
+        this.parallel = context.equalsWithCommand("PARFOR");
+        this.position = context.getPosition();
+        // 首先获取当前节点
+        context.next();
+        while (true) {
+            // 判断节点
+            if (!context.hasCurrentToken()) {
+                // 缺少 TO 时不再继续读取，否则会一直循环
+                System.out.println("Error: The 'FOR' Expression Missing 'TO'! ");
+                break;
+            } else if (context.equalsWithCommand("FROM")) {
+                // 设置开始索引内容
+                context.next();
+                try {
+                    this.start_index = context.getCurrentInt();
+                } catch (Exception e) {
+                    System.out
+                            .println("Error: After 'FROM' Expression Exist Error!Please Check the Format Of Expression is Correct!");
+                    break;
+                }
+                // 获取下一个节点
+                context.next();
+            } else if (context.equalsWithCommand("TO")) {
+                // 设置结束索引内容
+                context.next();
+                try {
+                    this.end_index = context.getCurrentInt();
+                } catch (Exception e) {
+                    System.out
+                            .println("Error: After 'TO' Expression Exist Error!Please Check the Format Of Expression is Correct!");
+                }
+                context.next();
+                break;
+            } else {
+                // 设置当前索引变量内容
+                if (this.variable == null) {
+                    this.variable = context.getCurrentToken();
+                }
+                // 获取下一个节点
+                context.next();
+            }
+        }
+        // 循环变量进入作用域，循环体中按槽位读写
+        this.slot = context.declare("" + this.variable);
+        // 建立列表表达式
+        this.expressions = new ListExpression();
+        this.expressions.parse(context);
+        context.undeclare();
+    }
+    /**
+     * 实现解释方法，PARFOR 在解释执行时按顺序执行，结果与并行执行相同
+     */
+    @Override
+    public void interpret(Frame frame) {
+        if (this.start_index > this.end_index) {
+            return;
+        }
+        int[] slots = frame.getSlots();
+        // 建立命令表达式，先执行再比较，end_index 为 Integer.MAX_VALUE 时 x++ 不会溢出成死循环
+        for (int x = this.start_index; ; x++) {
+            // 设置变量内容，直接写入槽位，不装箱也不计算 hash
+            slots[this.slot] = x;
+            // 执行解释方法
+            this.expressions.interpret(frame);
+            if (x == this.end_index) {
+                break;
+            }
+        }
+    }
+    @Override
+    public Executable compile() {
+        // 槽位、循环范围、循环体在编译时全部确定
+        final int slot = this.slot;
+        final int start = this.start_index;
+        final int end = this.end_index;
+        final Executable body = this.expressions.compile();
+        if (this.parallel) {
+            return new ParallelFor(slot, start, end, body);
+        }
+        if (start > end) {
+            return Executable.NOOP;
+        }
+        return frame -> {
+            int[] slots = frame.getSlots();
+            for (int x = start; ; x++) {
+                slots[slot] = x;
+                body.execute(frame);
+                if (x == end) {
+                    break;
+                }
+            }
+        };
+    }
+    String getVariable() {
+        return this.variable;
+    }
+    int getSlot() {
+        return this.slot;
+    }
+    boolean isParallel() {
+        return this.parallel;
+    }
+    long getPosition() {
+        return this.position;
+    }
+    int getStartIndex() {
+        return this.start_index;
+    }
+    int getEndIndex() {
+        return this.end_index;
+    }
+    ListExpression getBody() {
+        return this.expressions;
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.interprete;
+
+/**
+ * 栈帧：一次执行的全部运行时状态
+ *   解析时每个 FOR 变量分配一个 int 槽位，执行时直接读写 int[]，
+ *   循环每一步既不装箱成 Integer，也不需要对变量名计算 hash
+ *
+ *   语法树和编译结果都是不可变的，运行时状态只存在于栈帧中，
+ *   每次执行创建自己的栈帧，同一个程序就可以在多个线程中同时执行，互不干扰
+ */
+class Frame {
+    private final int[] slots;
+    // PRINTLN 拼接文本时复用的缓冲区
+    private final StringBuilder buffer = new StringBuilder();
+    // PRINTLN 的输出目的地
+    private final OutputSink outputSink;
+
+    public Frame(int size, OutputSink outputSink) {
+        this(new int[size], outputSink);
+    }
+
+    private Frame(int[] slots, OutputSink outputSink) {
+        this.slots = slots;
+        this.outputSink = outputSink;
+    }
+
+    /**
+     * 复制当前的变量值，创建输出到另一个 sink 的栈帧，用于并行执行循环的一段
+     * @param outputSink
+     * @return
+     */
+    public Frame fork(OutputSink outputSink) {
+        return new Frame(slots.clone(), outputSink);
+    }
+
+    public int[] getSlots() {
+        return slots;
+    }
+
+    public OutputSink getOutputSink() {
+        return outputSink;
+    }
+
+    /**
+     * 获得节点的内容
+     * @param template 解析时预先切分好的文本模板
+     * @return 复用的 StringBuilder，下一次调用前有效
+     */
+    public CharSequence getTokenContent(Template template) {
+        // 用栈帧中的变量值拼接模板片段后返回
+        buffer.setLength(0);
+        template.appendTo(buffer, slots);
+        return buffer;
+    }
+}
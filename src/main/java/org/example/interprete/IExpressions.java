@@ -0,0 +1,9 @@
+package org.example.interprete;
+
+interface IExpressions extends ExpressionNode {
+    /**
+     * 解析
+     * @param context
+     */
+    public void parse(Context context);
+}
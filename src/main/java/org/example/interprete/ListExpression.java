@@ -0,0 +1,76 @@
+package org.example.interprete;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+class ListExpression implements IExpressions {
+    private final ArrayList<ExpressionNode> list = new ArrayList<ExpressionNode>();
+    public ListExpression() {
+    }
+    /**
+     * 由优化器直接创建
+     * @param list
+     */
+    ListExpression(List<ExpressionNode> list) {
+        this.list.addAll(list);
+    }
+    List<ExpressionNode> getList() {
+        return Collections.unmodifiableList(this.list);
+    }
+    /**
+     * 构造方法将待解析的context传入
+     *
+     * @param context
+     */
+    public void parse(Context context) {
+        // 在ListExpression解析表达式中,循环解释语句中的每一个单词,直到终结符表达式或者异常情况退出
+        while (true) {
+            if (!context.hasCurrentToken()) {
+                // 获取当前节点如果为 null 则表示缺少END表达式
+                System.out.println("Error: The Experssion Missing 'END'! ");
+                break;
+            } else if (context.equalsWithCommand("END")) {
+                context.next();
+                // 解析正常结束
+                break;
+            } else {
+                // 建立Command 表达式
+                IExpressions expressions = new CommandExperssion(context);
+                // 添加到列表中
+                list.add(expressions);
+            }
+        }
+    }
+    /**
+     * 实现解释方法
+     */
+    @Override
+    public void interpret(Frame frame) {
+        // 循环list列表中每一个表达式 解释执行
+        Iterator<ExpressionNode> iterator = list.iterator();
+        while (iterator.hasNext()) {
+            (iterator.next()).interpret(frame);
+        }
+    }
+    @Override
+    public Executable compile() {
+        // 子节点编译成数组，0个、1个子节点时直接省掉循环
+        Executable[] executables = new Executable[list.size()];
+        for (int i = 0; i < executables.length; i++) {
+            executables[i] = list.get(i).compile();
+        }
+        if (executables.length == 0) {
+            return Executable.NOOP;
+        }
+        if (executables.length == 1) {
+            return executables[0];
+        }
+        return frame -> {
+            for (Executable executable : executables) {
+                executable.execute(frame);
+            }
+        };
+    }
+}
@@ -0,0 +1,113 @@
+package org.example.interprete;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 写入内存映射文件：按 regionSize 映射一段文件区域，直接编码成 UTF-8 写入映射内存，
+ *   区域写满后映射下一段，关闭时把文件截断到实际写入的长度
+ */
+class MappedFileSink implements OutputSink {
+    public static final int DEFAULT_REGION_SIZE = 1 << 20;
+    // UTF-8 一次编码最多写入 4 个字节（代理对），区域比这更小时编码永远放不下，会反复映射同一个位置
+    static final int MIN_REGION_SIZE = 4;
+
+    private final FileChannel channel;
+    private final int regionSize;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final CharBuffer separator = CharBuffer.wrap(System.lineSeparator());
+    // 当前映射区域在文件中的起始位置
+    private long regionStart;
+    private MappedByteBuffer region;
+
+    public MappedFileSink(Path path) {
+        this(path, DEFAULT_REGION_SIZE);
+    }
+
+    public MappedFileSink(Path path, int regionSize) {
+        if (regionSize < MIN_REGION_SIZE) {
+            throw new IllegalArgumentException("regionSize must be at least " + MIN_REGION_SIZE + ": " + regionSize);
+        }
+        this.regionSize = regionSize;
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.region = channel.map(FileChannel.MapMode.READ_WRITE, 0, regionSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void println(CharSequence line) {
+        encode(CharBuffer.wrap(line));
+        encode(separator.rewind());
+    }
+
+    @Override
+    public void writeLines(CharSequence block, int lineCount) {
+        if ("\n".equals(System.lineSeparator())) {
+            encode(CharBuffer.wrap(block));
+        } else {
+            OutputSink.super.writeLines(block, lineCount);
+        }
+    }
+
+    private void encode(CharBuffer chars) {
+        while (true) {
+            CoderResult result = encoder.encode(chars, region, true);
+            if (result.isUnderflow()) {
+                encoder.reset();
+                return;
+            }
+            if (result.isOverflow()) {
+                nextRegion();
+            } else {
+                encoder.reset();
+                throw new IllegalArgumentException("unmappable output: " + result);
+            }
+        }
+    }
+
+    private void nextRegion() {
+        regionStart += region.position();
+        region.force();
+        try {
+            region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, regionSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 已经写入的字节数
+     * @return
+     */
+    public long size() {
+        return regionStart + region.position();
+    }
+
+    @Override
+    public void flush() {
+        region.force();
+    }
+
+    @Override
+    public void close() {
+        try {
+            region.force();
+            channel.truncate(size());
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.interprete;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 基于内存映射文件，直接扫描映射内存中的字节，不把整个文件读到堆中
+ *   分隔符都是 ASCII 字符，UTF-8 中多字节字符的每个字节都大于 0x7F，不会被误判为分隔符，
+ *   只有 text() 时才把当前单词按 UTF-8 解码
+ *
+ *   单个 MappedByteBuffer 最大 2G，更大的脚本文件不支持
+ */
+class MappedTokenSource implements TokenSource {
+    private final MappedByteBuffer bytes;
+    private final int limit;
+    private int start = -1;
+    private int end;
+
+    public MappedTokenSource(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("script is larger than 2GB: " + path);
+            }
+            // 映射建立后与 channel 是否关闭无关
+            this.bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            this.limit = (int) size;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean advance() {
+        int i = end;
+        while (i < limit && TokenSource.isDelimiter(bytes.get(i))) {
+            i++;
+        }
+        if (i >= limit) {
+            start = -1;
+            end = i;
+            return false;
+        }
+        start = i;
+        while (i < limit && !TokenSource.isDelimiter(bytes.get(i))) {
+            i++;
+        }
+        end = i;
+        return true;
+    }
+
+    @Override
+    public boolean hasToken() {
+        return start >= 0;
+    }
+
+    @Override
+    public boolean matches(String keyword) {
+        if (start < 0 || keyword.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if (bytes.get(start + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int parseInt() {
+        if (start < 0) {
+            throw new NumberFormatException("no token");
+        }
+        int i = start;
+        boolean negative = false;
+        if (bytes.get(i) == '-' || bytes.get(i) == '+') {
+            negative = bytes.get(i) == '-';
+            i++;
+        }
+        if (i == end) {
+            throw new NumberFormatException("For input string: \"" + text() + "\"");
+        }
+        // 按负数累加，可以表示 Integer.MIN_VALUE
+        long limitValue = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = bytes.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + text() + "\"");
+            }
+            result = result * 10 - digit;
+            if (result < limitValue) {
+                throw new NumberFormatException("For input string: \"" + text() + "\"");
+            }
+        }
+        return (int) (negative ? result : -result);
+    }
+
+    @Override
+    public String text() {
+        if (start < 0) {
+            return null;
+        }
+        return StandardCharsets.UTF_8.decode(bytes.slice(start, end - start)).toString();
+    }
+
+    @Override
+    public long position() {
+        return start;
+    }
+}
@@ -0,0 +1,313 @@
+package org.example.interprete;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 语法树优化：在解析之后、编译之前执行，返回新的语法树，原来的语法树不变
+ *   1. 常量折叠：不引用任何循环变量的 PRINTLN，文本在优化时就确定，相邻的常量输出合并成一个 ConstantExpression
+ *   2. 循环不变量外提：循环体只有常量输出时，循环体的文本只计算一次，循环变成整块重复输出
+ *   3. 循环展开：迭代次数很少的循环直接展开，循环变量替换成常量后再做常量折叠
+ *   另外去掉 CommandExperssion 这一层转发、非 PRINTLN 的原始命令、空循环和嵌套的列表
+ *
+ *   优化器不是线程安全的，一次优化使用一个实例
+ */
+public class Optimizer {
+    // 展开循环的最大迭代次数
+    static final int UNROLL_MAX_ITERATIONS = 8;
+    // 展开后最多产生的节点数
+    static final int UNROLL_MAX_NODES = 32;
+    // 循环体是常量时，重复次数 * 文本长度不超过该值则直接拼成一个常量，否则保留为 RepeatExpression
+    static final int FOLD_MAX_CHARS = 4096;
+
+    private int foldedPrints;
+    private int hoistedLoops;
+    private int unrolledLoops;
+    private int removedLoops;
+    private Report report;
+
+    /**
+     * 优化一个列表表达式
+     * @param list
+     * @return 优化后的新列表
+     */
+    public ListExpression optimize(ListExpression list) {
+        int before = countNodes(list);
+        ListExpression optimized = new ListExpression(optimizeList(list.getList()));
+        this.report = new Report(before, countNodes(optimized), foldedPrints, hoistedLoops, unrolledLoops, removedLoops);
+        return optimized;
+    }
+
+    /**
+     * 最近一次优化的统计
+     * @return
+     */
+    public Report getReport() {
+        return report;
+    }
+
+    private List<ExpressionNode> optimize(ExpressionNode node) {
+        if (node instanceof CommandExperssion) {
+            return optimize(((CommandExperssion) node).getExpressions());
+        }
+        if (node instanceof ListExpression) {
+            return optimizeList(((ListExpression) node).getList());
+        }
+        if (node instanceof ForExpression) {
+            return optimizeFor((ForExpression) node);
+        }
+        if (node instanceof PrimitiveExpression) {
+            PrimitiveExpression primitive = (PrimitiveExpression) node;
+            if (!primitive.isPrintln()) {
+                return List.of();
+            }
+            if (primitive.getTemplate().isConstant()) {
+                foldedPrints++;
+                return List.of(new ConstantExpression(primitive.getTemplate() + "\n", 1, primitive.getPosition()));
+            }
+        }
+        return List.of(node);
+    }
+
+    private List<ExpressionNode> optimizeList(List<ExpressionNode> nodes) {
+        List<ExpressionNode> result = new ArrayList<>();
+        for (ExpressionNode node : nodes) {
+            for (ExpressionNode optimized : optimize(node)) {
+                append(result, optimized);
+            }
+        }
+        return result;
+    }
+
+    private List<ExpressionNode> optimizeFor(ForExpression loop) {
+        int start = loop.getStartIndex();
+        int end = loop.getEndIndex();
+        if (start > end) {
+            removedLoops++;
+            return List.of();
+        }
+        long count = (long) end - start + 1;
+        List<ExpressionNode> body = optimizeList(loop.getBody().getList());
+        if (body.isEmpty()) {
+            removedLoops++;
+            return List.of();
+        }
+        if (body.size() == 1 && body.get(0) instanceof ConstantExpression) {
+            // 循环体与循环变量无关，文本只计算一次
+            hoistedLoops++;
+            return List.of(hoist((ConstantExpression) body.get(0), count, loop));
+        }
+        int bodyNodes = 0;
+        for (ExpressionNode node : body) {
+            bodyNodes += countNodes(node);
+        }
+        if (count <= UNROLL_MAX_ITERATIONS && count * bodyNodes <= UNROLL_MAX_NODES) {
+            unrolledLoops++;
+            // 循环体已经优化过，每次迭代只绑定循环变量并折叠常量，不再重新优化
+            List<ExpressionNode> unrolled = new ArrayList<>();
+            for (int x = start; ; x++) {
+                for (ExpressionNode node : body) {
+                    append(unrolled, fold(bind(node, loop.getSlot(), x), x == start));
+                }
+                if (x == end) {
+                    break;
+                }
+            }
+            return unrolled;
+        }
+        return List.of(new ForExpression(loop, new ListExpression(body)));
+    }
+
+    /**
+     * 循环体是常量时，整个循环变成一次重复输出
+     */
+    private static ExpressionNode hoist(ConstantExpression constant, long count, ForExpression loop) {
+        if (count * constant.getBlock().length() <= FOLD_MAX_CHARS) {
+            return constant.repeat((int) count, loop.getPosition());
+        }
+        return new RepeatExpression(constant, count, loop.getPosition());
+    }
+
+    /**
+     * 折叠已经优化过、又绑定了外层循环变量的节点：变成常量的 PRINTLN 转成 ConstantExpression，
+     *   内层循环的循环体因此变成常量时外提
+     * @param node
+     * @param first 是否为展开的第一次迭代：每次迭代绑定的槽位相同，外提的循环也相同，只在第一次计入统计
+     */
+    private ExpressionNode fold(ExpressionNode node, boolean first) {
+        if (node instanceof PrimitiveExpression) {
+            PrimitiveExpression primitive = (PrimitiveExpression) node;
+            if (primitive.getTemplate().isConstant()) {
+                foldedPrints++;
+                return new ConstantExpression(primitive.getTemplate() + "\n", 1, primitive.getPosition());
+            }
+            return node;
+        }
+        if (node instanceof ForExpression) {
+            ForExpression loop = (ForExpression) node;
+            List<ExpressionNode> body = new ArrayList<>();
+            for (ExpressionNode child : loop.getBody().getList()) {
+                append(body, fold(child, first));
+            }
+            if (body.size() == 1 && body.get(0) instanceof ConstantExpression) {
+                if (first) {
+                    hoistedLoops++;
+                }
+                long count = (long) loop.getEndIndex() - loop.getStartIndex() + 1;
+                return hoist((ConstantExpression) body.get(0), count, loop);
+            }
+            return new ForExpression(loop, new ListExpression(body));
+        }
+        return node;
+    }
+
+    /**
+     * 把槽位替换成常量
+     */
+    private ExpressionNode bind(ExpressionNode node, int slot, int value) {
+        if (node instanceof PrimitiveExpression) {
+            PrimitiveExpression primitive = (PrimitiveExpression) node;
+            return new PrimitiveExpression(primitive.getTemplate().bind(slot, value), primitive.getPosition());
+        }
+        if (node instanceof ForExpression) {
+            ForExpression loop = (ForExpression) node;
+            return new ForExpression(loop, (ListExpression) bind(loop.getBody(), slot, value));
+        }
+        if (node instanceof ListExpression) {
+            List<ExpressionNode> bound = new ArrayList<>();
+            for (ExpressionNode child : ((ListExpression) node).getList()) {
+                bound.add(bind(child, slot, value));
+            }
+            return new ListExpression(bound);
+        }
+        return node;
+    }
+
+    /**
+     * 追加节点，与前一个常量输出合并
+     */
+    private static void append(List<ExpressionNode> result, ExpressionNode node) {
+        if (node instanceof ConstantExpression && !result.isEmpty()
+                && result.get(result.size() - 1) instanceof ConstantExpression) {
+            ConstantExpression last = (ConstantExpression) result.remove(result.size() - 1);
+            result.add(last.concat((ConstantExpression) node));
+            return;
+        }
+        result.add(node);
+    }
+
+    /**
+     * 统计节点个数，CommandExperssion 只是转发，不计入
+     */
+    static int countNodes(ExpressionNode node) {
+        if (node instanceof CommandExperssion) {
+            return countNodes(((CommandExperssion) node).getExpressions());
+        }
+        if (node instanceof ListExpression) {
+            int count = 1;
+            for (ExpressionNode child : ((ListExpression) node).getList()) {
+                count += countNodes(child);
+            }
+            return count;
+        }
+        if (node instanceof ForExpression) {
+            return 1 + countNodes(((ForExpression) node).getBody());
+        }
+        return 1;
+    }
+
+    /**
+     * 优化统计
+     */
+    public static final class Report {
+        private final int nodesBefore;
+        private final int nodesAfter;
+        private final int foldedPrints;
+        private final int hoistedLoops;
+        private final int unrolledLoops;
+        private final int removedLoops;
+
+        Report(int nodesBefore, int nodesAfter, int foldedPrints, int hoistedLoops, int unrolledLoops, int removedLoops) {
+            this.nodesBefore = nodesBefore;
+            this.nodesAfter = nodesAfter;
+            this.foldedPrints = foldedPrints;
+            this.hoistedLoops = hoistedLoops;
+            this.unrolledLoops = unrolledLoops;
+            this.removedLoops = removedLoops;
+        }
+
+        public int getNodesBefore() {
+            return nodesBefore;
+        }
+
+        public int getNodesAfter() {
+            return nodesAfter;
+        }
+
+        /**
+         * 去掉的节点数，展开循环会增加节点，所以可能为负数
+         * @return
+         */
+        public int getRemovedNodes() {
+            return nodesBefore - nodesAfter;
+        }
+
+        public int getFoldedPrints() {
+            return foldedPrints;
+        }
+
+        public int getHoistedLoops() {
+            return hoistedLoops;
+        }
+
+        public int getUnrolledLoops() {
+            return unrolledLoops;
+        }
+
+        public int getRemovedLoops() {
+            return removedLoops;
+        }
+
+        @Override
+        public String toString() {
+            return "nodes " + nodesBefore + " -> " + nodesAfter + " (removed " + getRemovedNodes() + ")"
+                    + ", folded PRINTLN " + foldedPrints + ", hoisted loops " + hoistedLoops
+                    + ", unrolled loops " + unrolledLoops + ", removed loops " + removedLoops;
+        }
+    }
+
+    public static void main(String[] args) {
+        String str = "PROGRAM PRINTLN start... " +
+                "FOR i FROM 1 TO 100000 PRINTLN row-i FOR j FROM 1 TO 3 PRINTLN col-j PRINTLN cell-i-j END END " +
+                "FOR k FROM 1 TO 100000 PRINTLN same PRINTLN line END " +
+                "FOR k FROM 5 TO 1 PRINTLN never END " +
+                "PRINTLN end... END";
+        ProgramExpression expression = new ProgramExpression(str);
+        Optimizer optimizer = new Optimizer();
+        ProgramExpression optimized = expression.optimize(optimizer);
+        System.out.println(optimizer.getReport());
+
+        // 优化前后输出必须完全一致
+        StringWriter expected = new StringWriter();
+        expression.interpret(expression.newFrame(new WriterSink(expected)));
+        StringWriter actual = new StringWriter();
+        optimized.interpret(optimized.newFrame(new WriterSink(actual)));
+        System.out.println("same output: " + expected.toString().equals(actual.toString()));
+
+        Executable plain = expression.compile();
+        Executable fast = optimized.compile();
+        for (int round = 1; round <= 5; round++) {
+            CountingSink plainSink = new CountingSink();
+            long begin = System.nanoTime();
+            plain.execute(expression.newFrame(plainSink));
+            long plainNanos = System.nanoTime() - begin;
+            CountingSink fastSink = new CountingSink();
+            begin = System.nanoTime();
+            fast.execute(optimized.newFrame(fastSink));
+            long fastNanos = System.nanoTime() - begin;
+            System.out.printf("round %d: plain %d ms, optimized %d ms (%d lines)%n", round,
+                    plainNanos / 1_000_000, fastNanos / 1_000_000, fastSink.getLines());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.interprete;
+
+
+/**
+ * PRINTLN 的输出目的地
+ *   System.out.println 是同步的，并且每行都会 flush，循环中大量打印时就是瓶颈，
+ *   每次执行时为栈帧指定不同的输出实现，可以批量写入、写入内存映射文件，或者只计数不输出
+ *
+ *   实现类都不是线程安全的，一次执行使用一个 sink
+ */
+interface OutputSink {
+    /**
+     * 输出一行，line 可能是复用的缓冲区，实现类不能保留引用
+     * @param line
+     */
+    void println(CharSequence line);
+
+    /**
+     * 输出多行，block 中每行以 '\n' 结尾，用于合并并行执行时各段缓冲的输出
+     *   默认逐行调用 println，实现类可以整块写出
+     * @param block
+     * @param lineCount block 中的行数
+     */
+    default void writeLines(CharSequence block, int lineCount) {
+        int lineStart = 0;
+        for (int i = 0; i < block.length(); i++) {
+            if (block.charAt(i) == '\n') {
+                println(block.subSequence(lineStart, i));
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    /**
+     * 把缓冲的内容写出
+     */
+    void flush();
+
+    /**
+     * 写出缓冲内容并释放资源
+     */
+    default void close() {
+        flush();
+    }
+}
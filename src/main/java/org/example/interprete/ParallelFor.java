@@ -0,0 +1,127 @@
+package org.example.interprete;
+
+import java.io.StringWriter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * PARFOR 编译后的可执行节点：把循环范围拆成多段，在 ForkJoinPool.commonPool() 中并行执行
+ *   循环体只会格式化文本并输出，不会修改其他变量，各段之间没有依赖，
+ *   每一段使用自己的栈帧（复制外层循环变量）和 BufferSink，执行完成后按段的顺序合并到真正的输出，
+ *   输出顺序与 FOR 完全相同
+ *
+ *   最多同时提交 parallelism * 2 段，前面的段写出后再提交后面的段，大范围循环不会把全部输出都缓存在内存中
+ */
+public class ParallelFor implements Executable {
+    // 每段最少的迭代次数，太小的段拆分和合并的开销大于并行的收益
+    static final int MIN_CHUNK = 1024;
+
+    private final int slot;
+    private final int start;
+    private final int end;
+    private final Executable body;
+
+    ParallelFor(int slot, int start, int end, Executable body) {
+        this.slot = slot;
+        this.start = start;
+        this.end = end;
+        this.body = body;
+    }
+
+    @Override
+    public void execute(Frame frame) {
+        if (start > end) {
+            return;
+        }
+        long count = (long) end - start + 1;
+        int parallelism = ForkJoinPool.commonPool().getParallelism();
+        long chunkSize = Math.max(MIN_CHUNK, (count + parallelism * 4L - 1) / (parallelism * 4L));
+        // 单核机器上拆分只有额外开销，直接顺序执行
+        if (count <= chunkSize || Runtime.getRuntime().availableProcessors() == 1) {
+            loop(frame, start, end);
+            return;
+        }
+        int chunks = (int) ((count + chunkSize - 1) / chunkSize);
+        int window = parallelism * 2;
+        Chunk[] tasks = new Chunk[chunks];
+        int forked = 0;
+        for (int i = 0; i < chunks; i++) {
+            while (forked < chunks && forked < i + window) {
+                int from = (int) (start + forked * chunkSize);
+                int to = (int) Math.min(end, from + chunkSize - 1);
+                tasks[forked] = new Chunk(frame, from, to);
+                tasks[forked].fork();
+                forked++;
+            }
+            // 按顺序等待每一段完成并写出
+            tasks[i].join().drainTo(frame.getOutputSink());
+            tasks[i] = null;
+        }
+    }
+
+    private void loop(Frame frame, int from, int to) {
+        int[] slots = frame.getSlots();
+        for (int x = from; ; x++) {
+            slots[slot] = x;
+            body.execute(frame);
+            if (x == to) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 一段循环，在自己的栈帧中执行，输出缓存到 BufferSink
+     *   ForkJoinTask 实现了 Serializable，但任务只在进程内执行，不会被序列化
+     */
+    @SuppressWarnings("serial")
+    private class Chunk extends RecursiveTask<BufferSink> {
+        private final Frame parent;
+        private final int from;
+        private final int to;
+
+        private Chunk(Frame parent, int from, int to) {
+            this.parent = parent;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BufferSink compute() {
+            BufferSink sink = new BufferSink();
+            loop(parent.fork(sink), from, to);
+            return sink;
+        }
+    }
+
+    public static void main(String[] args) {
+        int iterations = 2_000_000;
+        CompiledProgram sequential = CompiledProgram.compile(
+                "PROGRAM FOR i FROM 1 TO " + iterations + " FOR j FROM 1 TO 3 PRINTLN row-i-col-j END END END");
+        CompiledProgram parallel = CompiledProgram.compile(
+                "PROGRAM PARFOR i FROM 1 TO " + iterations + " FOR j FROM 1 TO 3 PRINTLN row-i-col-j END END END");
+
+        // 输出顺序必须和 FOR 完全一致
+        String small = "PROGRAM PARFOR i FROM 1 TO 5000 PRINTLN i END END";
+        StringWriter expected = new StringWriter();
+        CompiledProgram.compile(small.replace("PARFOR", "FOR")).run(new WriterSink(expected));
+        StringWriter actual = new StringWriter();
+        CompiledProgram.compile(small).run(new WriterSink(actual));
+        System.out.println("same output: " + expected.toString().equals(actual.toString()));
+
+        for (int round = 1; round <= 5; round++) {
+            CountingSink sequentialSink = new CountingSink();
+            long begin = System.nanoTime();
+            sequential.run(sequentialSink);
+            long sequentialNanos = System.nanoTime() - begin;
+
+            CountingSink parallelSink = new CountingSink();
+            begin = System.nanoTime();
+            parallel.run(parallelSink);
+            long parallelNanos = System.nanoTime() - begin;
+            System.out.printf("round %d: FOR %d ms, PARFOR %d ms (%d lines, %d threads)%n", round,
+                    sequentialNanos / 1_000_000, parallelNanos / 1_000_000, parallelSink.getLines(),
+                    ForkJoinPool.commonPool().getParallelism());
+        }
+    }
+}
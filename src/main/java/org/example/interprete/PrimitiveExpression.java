@@ -0,0 +1,75 @@
+package org.example.interprete;
+
+class PrimitiveExpression implements IExpressions {
+    // 是否是 PRINTLN 命令
+    private boolean println;
+    // 文本内容，解析时切分成文本片段和变量片段
+    private Template template;
+    // 命令在源中的位置
+    private long position;
+    /**
+     * 构造方法将待解析的context传入
+     *
+     * @param context
+     */
+    public PrimitiveExpression(Context context) {
+        this.parse(context);
+    }
+    /**
+     * PRINTLN 表达式，由优化器直接创建
+     *
+     * @param template
+     * @param position
+     */
+    PrimitiveExpression(Template template, long position) {
+        this.println = true;
+        this.template = template;
+        this.position = position;
+    }
+    @Override
+    public void parse(Context context) {
+        this.println = context.equalsWithCommand("PRINTLN");
+        this.position = context.getPosition();
+        context.next();
+        if (this.println) {
+            this.template = Template.parse(context.getCurrentToken(),
+                    context.visibleNames(), context.visibleSlots());
+            context.next();
+        }
+    }
+    /**
+     * 实现解释方法
+     */
+    @Override
+    public void interpret(Frame frame) {
+        // 首先获取当前节点内容
+        if (this.println) {
+            // 获得内容信息
+            // 打印内容
+            frame.getOutputSink().println(frame.getTokenContent(this.template));
+        }
+    }
+    @Override
+    public Executable compile() {
+        // 非 PRINTLN 命令没有执行内容，编译时直接丢弃
+        if (!this.println) {
+            return Executable.NOOP;
+        }
+        final Template template = this.template;
+        if (template.isConstant()) {
+            // 不含变量的文本在解析时就已经确定
+            final String content = template.toString();
+            return frame -> frame.getOutputSink().println(content);
+        }
+        return frame -> frame.getOutputSink().println(frame.getTokenContent(template));
+    }
+    boolean isPrintln() {
+        return this.println;
+    }
+    Template getTemplate() {
+        return this.template;
+    }
+    long getPosition() {
+        return this.position;
+    }
+}
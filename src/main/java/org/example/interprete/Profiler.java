@@ -0,0 +1,271 @@
+package org.example.interprete;
+
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 性能分析：统计每个节点的执行次数和累计耗时，按节点在源中的位置归类
+ *   instrument() 复制一棵语法树，FOR / PRINTLN 以及优化器生成的常量节点外面各包一层 ProfiledExpression，
+ *   原来的语法树不变，不分析时执行的还是原来的节点，没有任何额外开销
+ *
+ *   计数使用 LongAdder，PARFOR 编译后在多个线程中执行时也能正确累加
+ *   自身耗时 = 累计耗时 - 子节点的累计耗时
+ */
+public class Profiler {
+    private final PrintStream out;
+    private final NodeStats root = new NodeStats("PROGRAM", 0);
+    // instrument 时当前所在的节点
+    private NodeStats current = root;
+
+    /**
+     * 报告输出到 System.out
+     */
+    public Profiler() {
+        this(System.out);
+    }
+
+    public Profiler(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * 复制语法树并插入计时节点
+     * @param list
+     * @return
+     */
+    ListExpression instrument(ListExpression list) {
+        List<ExpressionNode> program = new ArrayList<>();
+        program.add(new ProfiledExpression(instrumentList(list), root));
+        return new ListExpression(program);
+    }
+
+    private ListExpression instrumentList(ListExpression list) {
+        List<ExpressionNode> children = new ArrayList<>();
+        for (ExpressionNode child : list.getList()) {
+            children.add(instrumentNode(child));
+        }
+        return new ListExpression(children);
+    }
+
+    private ExpressionNode instrumentNode(ExpressionNode node) {
+        if (node instanceof CommandExperssion) {
+            return instrumentNode(((CommandExperssion) node).getExpressions());
+        }
+        if (node instanceof ListExpression) {
+            return instrumentList((ListExpression) node);
+        }
+        if (node instanceof ForExpression) {
+            ForExpression loop = (ForExpression) node;
+            NodeStats stats = enter((loop.isParallel() ? "PARFOR " : "FOR ") + loop.getVariable()
+                    + " FROM " + loop.getStartIndex() + " TO " + loop.getEndIndex(), loop.getPosition());
+            ListExpression body = instrumentList(loop.getBody());
+            current = stats.parent;
+            return new ProfiledExpression(new ForExpression(loop, body), stats);
+        }
+        if (node instanceof PrimitiveExpression) {
+            PrimitiveExpression primitive = (PrimitiveExpression) node;
+            String label = primitive.isPrintln() ? "PRINTLN " + primitive.getTemplate() : "(ignored)";
+            return leaf(node, label, primitive.getPosition());
+        }
+        if (node instanceof ConstantExpression) {
+            ConstantExpression constant = (ConstantExpression) node;
+            return leaf(node, "CONSTANT " + constant.getLineCount() + " lines", constant.getPosition());
+        }
+        if (node instanceof RepeatExpression) {
+            RepeatExpression repeat = (RepeatExpression) node;
+            return leaf(node, "REPEAT " + repeat.getCount() + " x " + repeat.getBody().getLineCount() + " lines",
+                    repeat.getPosition());
+        }
+        return node;
+    }
+
+    private ExpressionNode leaf(ExpressionNode node, String label, long position) {
+        NodeStats stats = enter(label, position);
+        current = stats.parent;
+        return new ProfiledExpression(node, stats);
+    }
+
+    private NodeStats enter(String label, long position) {
+        NodeStats stats = new NodeStats(label, position);
+        stats.parent = current;
+        current.children.add(stats);
+        current = stats;
+        return stats;
+    }
+
+    /**
+     * 输出平铺报告（按自身耗时排序）和树形报告
+     */
+    public void printReport() {
+        long total = root.getNanos();
+        out.println("==== profile: flat (by self time) ====");
+        out.printf("%8s %12s %12s %12s  %s%n", "self%", "self(us)", "total(us)", "count", "node");
+        List<NodeStats> all = new ArrayList<>();
+        collect(root, all);
+        all.sort(Comparator.comparingLong(NodeStats::getSelfNanos).reversed());
+        for (NodeStats stats : all) {
+            out.printf("%7.2f%% %12d %12d %12d  %s%n", percent(stats.getSelfNanos(), total),
+                    stats.getSelfNanos() / 1000, stats.getNanos() / 1000, stats.getCount(), stats.describe());
+        }
+        out.println("==== profile: tree ====");
+        out.printf("%8s %12s %12s  %s%n", "total%", "total(us)", "count", "node");
+        printTree(root, 0, total);
+    }
+
+    private void printTree(NodeStats stats, int depth, long total) {
+        out.printf("%7.2f%% %12d %12d  %s%s%n", percent(stats.getNanos(), total), stats.getNanos() / 1000,
+                stats.getCount(), "  ".repeat(depth), stats.describe());
+        for (NodeStats child : stats.children) {
+            printTree(child, depth + 1, total);
+        }
+    }
+
+    private static void collect(NodeStats stats, List<NodeStats> all) {
+        all.add(stats);
+        for (NodeStats child : stats.children) {
+            collect(child, all);
+        }
+    }
+
+    private static double percent(long nanos, long total) {
+        return total == 0 ? 0 : nanos * 100.0 / total;
+    }
+
+    /**
+     * 分析结果的根节点
+     * @return
+     */
+    public NodeStats getRoot() {
+        return root;
+    }
+
+    /**
+     * 一个节点的统计
+     */
+    public static final class NodeStats {
+        private final String label;
+        private final long position;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final List<NodeStats> children = new ArrayList<>();
+        private NodeStats parent;
+
+        NodeStats(String label, long position) {
+            this.label = label;
+            this.position = position;
+        }
+
+        void record(long elapsed) {
+            count.increment();
+            nanos.add(elapsed);
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * 节点在源中的位置（字符或字节偏移）
+         * @return
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getNanos() {
+            return nanos.sum();
+        }
+
+        /**
+         * 自身耗时，不包括子节点
+         * @return
+         */
+        public long getSelfNanos() {
+            long self = getNanos();
+            for (NodeStats child : children) {
+                self -= child.getNanos();
+            }
+            return Math.max(self, 0);
+        }
+
+        public List<NodeStats> getChildren() {
+            return List.copyOf(children);
+        }
+
+        String describe() {
+            return parent == null ? label : label + " @" + position;
+        }
+    }
+
+    public static void main(String[] args) {
+        String str = "PROGRAM PRINTLN start... " +
+                "FOR i FROM 1 TO 2000 PRINTLN row-i FOR j FROM 1 TO 50 PRINTLN cell-i-j END END " +
+                "FOR k FROM 1 TO 2000 PRINTLN same END " +
+                "PRINTLN end... END";
+        ProgramExpression expression = new ProgramExpression(str);
+
+        // 解释执行，执行结束后打印报告
+        Profiler profiler = new Profiler();
+        ProgramExpression profiled = expression.profile(profiler);
+        StringWriter writer = new StringWriter();
+        profiled.interpret(profiled.newFrame(new WriterSink(writer)));
+        profiler.printReport();
+
+        // 优化后的程序同样可以分析，常量节点归到原来的 PRINTLN / FOR 的位置
+        Profiler optimizedProfiler = new Profiler();
+        ProgramExpression optimized = expression.optimize(new Optimizer()).profile(optimizedProfiler);
+        optimized.interpret(optimized.newFrame(new CountingSink()));
+        optimizedProfiler.printReport();
+
+        // 编译执行，多次执行的计数累加，最后打印一次
+        CompiledProgram compiled = CompiledProgram.compile(str, new Profiler());
+        for (int i = 0; i < 3; i++) {
+            compiled.run(new CountingSink());
+        }
+        compiled.getProfiler().printReport();
+
+        // 分析前后输出必须完全一致
+        StringWriter expected = new StringWriter();
+        expression.interpret(expression.newFrame(new WriterSink(expected)));
+        System.out.println("same output: " + expected.toString().equals(writer.toString()));
+    }
+}
+
+/**
+ * 计时节点：包装一个节点，记录执行次数和耗时
+ */
+class ProfiledExpression implements ExpressionNode {
+    private final ExpressionNode target;
+    private final Profiler.NodeStats stats;
+
+    ProfiledExpression(ExpressionNode target, Profiler.NodeStats stats) {
+        this.target = target;
+        this.stats = stats;
+    }
+
+    @Override
+    public void interpret(Frame frame) {
+        long begin = System.nanoTime();
+        target.interpret(frame);
+        stats.record(System.nanoTime() - begin);
+    }
+
+    @Override
+    public Executable compile() {
+        final Executable executable = target.compile();
+        final Profiler.NodeStats stats = this.stats;
+        return frame -> {
+            long begin = System.nanoTime();
+            executable.execute(frame);
+            stats.record(System.nanoTime() - begin);
+        };
+    }
+}
@@ -0,0 +1,134 @@
+package org.example.interprete;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 编译结果缓存：同样的 PROGRAM 文本只解析、编译一次
+ *   以源码的 64 位 hash 作为 key，entry 中保留源码，命中时比较源码，避免 hash 冲突返回错误的程序
+ *   LinkedHashMap 按访问顺序排列，超过 maxSize 时淘汰最久没有使用的程序（LRU）
+ *
+ *   编译在锁外进行，多个线程同时编译同一段文本时，后放入的覆盖先放入的，结果是等价的
+ */
+public class ProgramCache {
+    private final int maxSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Long, CacheEntry> programs;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ProgramCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.programs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CacheEntry> eldest) {
+                if (size() > ProgramCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 获取编译好的程序，没有则编译后放入缓存
+     * @param text
+     * @return
+     */
+    public CompiledProgram get(String text) {
+        long key = hash(text);
+        CacheEntry entry;
+        lock.lock();
+        try {
+            entry = programs.get(key);
+        } finally {
+            lock.unlock();
+        }
+        if (entry != null && entry.source.equals(text)) {
+            hits.increment();
+            return entry.program;
+        }
+        misses.increment();
+        CompiledProgram program = CompiledProgram.compile(text);
+        lock.lock();
+        try {
+            programs.put(key, new CacheEntry(text, program));
+        } finally {
+            lock.unlock();
+        }
+        return program;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return programs.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ProgramCache{size=" + size() + ", maxSize=" + maxSize + ", hits=" + getHits()
+                + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "}";
+    }
+
+    /**
+     * 64 位 FNV-1a，比 String.hashCode 的冲突少得多
+     * @param text
+     * @return
+     */
+    static long hash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static final class CacheEntry {
+        private final String source;
+        private final CompiledProgram program;
+
+        private CacheEntry(String source, CompiledProgram program) {
+            this.source = source;
+            this.program = program;
+        }
+    }
+
+    public static void main(String[] args) {
+        ProgramCache cache = new ProgramCache(2);
+        String[] scripts = {
+                "PROGRAM PRINTLN a FOR i FROM 1 TO 2 PRINTLN a-i END END",
+                "PROGRAM PRINTLN b END",
+                "PROGRAM PRINTLN a FOR i FROM 1 TO 2 PRINTLN a-i END END",
+                "PROGRAM PRINTLN c END",
+                "PROGRAM PRINTLN b END",
+        };
+        for (String script : scripts) {
+            cache.get(script).run();
+        }
+        System.out.println(cache);
+    }
+}
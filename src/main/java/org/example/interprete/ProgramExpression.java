@@ -0,0 +1,112 @@
+package org.example.interprete;
+
+class ProgramExpression implements IExpressions {
+    // 当前命令
+    private final static String COMMAND = "PROGRAM";
+    // 没有以 PROGRAM 开始时的输出，解释执行、编译执行和字节码共用
+    final static String MISSING_PROGRAM = "The '" + COMMAND + "' is Excepted For Start!";
+    // 存储下一个表达式引用
+    private ListExpression expressions;
+    // 执行时需要的栈帧大小
+    private int frameSize;
+    /**
+     * 构造方法将待解析的内容传入
+     * Context 只在解析时使用，解析完成后语法树不再引用它，同一棵语法树可以被多个线程同时执行
+     *
+     * @param text
+     */
+    public ProgramExpression(String text) {
+        this.parse(new Context(text));
+    }
+    /**
+     * 从指定的 Context 解析，比如内存映射的脚本文件：new Context(new MappedTokenSource(path))
+     *
+     * @param context
+     */
+    public ProgramExpression(Context context) {
+        this.parse(context);
+    }
+    private ProgramExpression(ListExpression expressions, int frameSize) {
+        this.expressions = expressions;
+        this.frameSize = frameSize;
+    }
+    @Override
+    public void parse(Context context) {
+        // 获取第一个命令节点
+        context.next();
+        // 判断是否是以PROGRAM 开始，是则在构造时一次解析完成，重复执行时不再解析
+        if (context.equalsWithCommand(COMMAND)) {
+            context.next();
+            this.expressions = new ListExpression();
+            this.expressions.parse(context);
+        }
+        this.frameSize = context.getFrameSize();
+    }
+    /**
+     * 解释执行，输出到 System.out
+     */
+    public void interpret() {
+        this.interpret(this.newFrame(SystemOutSink.INSTANCE));
+    }
+    /**
+     * 实现解释方法
+     */
+    @Override
+    public void interpret(Frame frame) {
+        if (this.expressions == null) {
+            frame.getOutputSink().println(MISSING_PROGRAM);
+        } else {
+            // ListExpression表达式开始解析
+            this.expressions.interpret(frame);
+        }
+        frame.getOutputSink().flush();
+    }
+    @Override
+    public Executable compile() {
+        if (this.expressions == null) {
+            return frame -> frame.getOutputSink().println(MISSING_PROGRAM);
+        }
+        return this.expressions.compile();
+    }
+    /**
+     * 创建一次执行使用的栈帧
+     * @param outputSink
+     * @return
+     */
+    public Frame newFrame(OutputSink outputSink) {
+        return new Frame(this.frameSize, outputSink);
+    }
+    public int getFrameSize() {
+        return this.frameSize;
+    }
+    /**
+     * 程序主体，没有以 PROGRAM 开始时为 null
+     * @return
+     */
+    ListExpression getExpressions() {
+        return this.expressions;
+    }
+    /**
+     * 优化后的程序，原来的语法树不变
+     * @param optimizer
+     * @return
+     */
+    public ProgramExpression optimize(Optimizer optimizer) {
+        if (this.expressions == null) {
+            return this;
+        }
+        return new ProgramExpression(optimizer.optimize(this.expressions), this.frameSize);
+    }
+    /**
+     * 带性能分析的程序，每个节点都包装一层计时，原来的语法树不变，不分析时没有任何额外开销
+     *   计数在多次执行之间累加，需要时调用 profiler.printReport() 输出报告
+     * @param profiler
+     * @return
+     */
+    public ProgramExpression profile(Profiler profiler) {
+        if (this.expressions == null) {
+            return this;
+        }
+        return new ProgramExpression(profiler.instrument(this.expressions), this.frameSize);
+    }
+}
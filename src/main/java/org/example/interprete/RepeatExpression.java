@@ -0,0 +1,49 @@
+package org.example.interprete;
+
+/**
+ * 优化器生成的重复输出：循环体与循环变量无关，只重复输出同一段常量文本
+ */
+class RepeatExpression implements ExpressionNode {
+    private final ConstantExpression body;
+    private final long count;
+    // 原来的循环在源中的位置
+    private final long position;
+
+    RepeatExpression(ConstantExpression body, long count, long position) {
+        this.body = body;
+        this.count = count;
+        this.position = position;
+    }
+
+    @Override
+    public void interpret(Frame frame) {
+        for (long i = 0; i < count; i++) {
+            body.interpret(frame);
+        }
+    }
+
+    @Override
+    public Executable compile() {
+        final String block = body.getBlock();
+        final int lineCount = body.getLineCount();
+        final long count = this.count;
+        return frame -> {
+            OutputSink sink = frame.getOutputSink();
+            for (long i = 0; i < count; i++) {
+                sink.writeLines(block, lineCount);
+            }
+        };
+    }
+
+    ConstantExpression getBody() {
+        return body;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getPosition() {
+        return position;
+    }
+}
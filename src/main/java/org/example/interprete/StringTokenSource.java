@@ -0,0 +1,69 @@
+package org.example.interprete;
+
+/**
+ * 基于内存中的字符串
+ */
+class StringTokenSource implements TokenSource {
+    private final CharSequence text;
+    private int start = -1;
+    private int end;
+
+    public StringTokenSource(CharSequence text) {
+        this.text = text;
+    }
+
+    @Override
+    public boolean advance() {
+        int i = end;
+        while (i < text.length() && TokenSource.isDelimiter(text.charAt(i))) {
+            i++;
+        }
+        if (i >= text.length()) {
+            start = -1;
+            end = i;
+            return false;
+        }
+        start = i;
+        while (i < text.length() && !TokenSource.isDelimiter(text.charAt(i))) {
+            i++;
+        }
+        end = i;
+        return true;
+    }
+
+    @Override
+    public boolean hasToken() {
+        return start >= 0;
+    }
+
+    @Override
+    public boolean matches(String keyword) {
+        if (start < 0 || keyword.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if (text.charAt(start + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int parseInt() {
+        if (start < 0) {
+            throw new NumberFormatException("no token");
+        }
+        return Integer.parseInt(text, start, end, 10);
+    }
+
+    @Override
+    public String text() {
+        return start < 0 ? null : text.subSequence(start, end).toString();
+    }
+
+    @Override
+    public long position() {
+        return start;
+    }
+}
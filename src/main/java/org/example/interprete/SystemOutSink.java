@@ -0,0 +1,30 @@
+package org.example.interprete;
+
+/**
+ * 默认实现，与原来的行为一致，每次都取当前的 System.out
+ */
+class SystemOutSink implements OutputSink {
+    public static final SystemOutSink INSTANCE = new SystemOutSink();
+
+    private SystemOutSink() {
+    }
+
+    @Override
+    public void println(CharSequence line) {
+        System.out.println(line);
+    }
+
+    @Override
+    public void writeLines(CharSequence block, int lineCount) {
+        if ("\n".equals(System.lineSeparator())) {
+            System.out.print(block);
+        } else {
+            OutputSink.super.writeLines(block, lineCount);
+        }
+    }
+
+    @Override
+    public void flush() {
+        System.out.flush();
+    }
+}
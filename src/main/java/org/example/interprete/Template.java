@@ -0,0 +1,174 @@
+package org.example.interprete;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PRINTLN 的文本模板：解析时把文本切分成 文本片段 和 变量片段，执行时只做拼接
+ *   literals[i] 是第 i 个变量前面的文本，最后一个 literal 是最后一个变量之后的文本，
+ *   所以 literals.length == slots.length + 1
+ *
+ *   变量只在标识符边界上匹配（前后都不是字母、数字、下划线），
+ *   变量 i 不会再把 print 替换成 pr1nt，也不会有正则编译的开销
+ */
+class Template {
+    private final String[] literals;
+    private final int[] slots;
+
+    private Template(String[] literals, int[] slots) {
+        this.literals = literals;
+        this.slots = slots;
+    }
+
+    /**
+     * 由已经切分好的片段创建，用于从字节码中加载
+     * @param literals 长度必须是 slots.length + 1
+     * @param slots
+     * @return
+     */
+    static Template of(String[] literals, int[] slots) {
+        if (literals.length != slots.length + 1) {
+            throw new IllegalArgumentException("literals.length must be slots.length + 1");
+        }
+        return new Template(literals.clone(), slots.clone());
+    }
+
+    String[] getLiterals() {
+        return literals.clone();
+    }
+
+    int[] getSlots() {
+        return slots.clone();
+    }
+
+    /**
+     * 切分文本
+     * @param text PRINTLN 的文本
+     * @param names 当前作用域可见的变量名，同名变量只有最内层的
+     * @param slots 变量名对应的槽位
+     * @return
+     */
+    public static Template parse(String text, String[] names, int[] slots) {
+        // 与 System.out.println((String) null) 的输出保持一致
+        String str = String.valueOf(text);
+        List<String> literalList = new ArrayList<>();
+        List<Integer> slotList = new ArrayList<>();
+        int literalStart = 0;
+        int i = 0;
+        while (i < str.length()) {
+            if (!isIdentifierPart(str.charAt(i)) || (i > 0 && isIdentifierPart(str.charAt(i - 1)))) {
+                i++;
+                continue;
+            }
+            // 标识符的开始位置，取出整个标识符后和变量名比较
+            int end = i;
+            while (end < str.length() && isIdentifierPart(str.charAt(end))) {
+                end++;
+            }
+            int index = indexOf(names, str, i, end);
+            if (index >= 0) {
+                literalList.add(str.substring(literalStart, i));
+                slotList.add(slots[index]);
+                literalStart = end;
+            }
+            i = end;
+        }
+        literalList.add(str.substring(literalStart));
+        int[] slotArray = new int[slotList.size()];
+        for (int j = 0; j < slotArray.length; j++) {
+            slotArray[j] = slotList.get(j);
+        }
+        return new Template(literalList.toArray(new String[0]), slotArray);
+    }
+
+    private static int indexOf(String[] names, String str, int start, int end) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].length() == end - start && str.startsWith(names[i], start)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * 没有变量片段，文本在解析时就已经确定
+     * @return
+     */
+    public boolean isConstant() {
+        return slots.length == 0;
+    }
+
+    /**
+     * 是否引用了某个槽位
+     * @param slot
+     * @return
+     */
+    public boolean usesSlot(int slot) {
+        for (int s : slots) {
+            if (s == slot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 把某个槽位的变量替换成常量，返回新的模板，用于展开循环后的常量折叠
+     * @param slot
+     * @param value
+     * @return
+     */
+    public Template bind(int slot, int value) {
+        if (!usesSlot(slot)) {
+            return this;
+        }
+        List<String> literalList = new ArrayList<>();
+        List<Integer> slotList = new ArrayList<>();
+        StringBuilder literal = new StringBuilder(literals[0]);
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] == slot) {
+                literal.append(value).append(literals[i + 1]);
+            } else {
+                literalList.add(literal.toString());
+                slotList.add(slots[i]);
+                literal.setLength(0);
+                literal.append(literals[i + 1]);
+            }
+        }
+        literalList.add(literal.toString());
+        int[] slotArray = new int[slotList.size()];
+        for (int j = 0; j < slotArray.length; j++) {
+            slotArray[j] = slotList.get(j);
+        }
+        return new Template(literalList.toArray(new String[0]), slotArray);
+    }
+
+    /**
+     * 按栈帧中的变量值拼接，int 直接追加到 StringBuilder，不产生中间字符串
+     * @param buffer
+     * @param values 栈帧槽位
+     */
+    public void appendTo(StringBuilder buffer, int[] values) {
+        for (int i = 0; i < slots.length; i++) {
+            buffer.append(literals[i]).append(values[slots[i]]);
+        }
+        buffer.append(literals[slots.length]);
+    }
+
+    /**
+     * 模板的原始文本形式，变量片段用变量槽位表示，常量模板即为文本本身
+     * @return
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < slots.length; i++) {
+            builder.append(literals[i]).append("${").append(slots[i]).append('}');
+        }
+        return builder.append(literals[slots.length]).toString();
+    }
+}
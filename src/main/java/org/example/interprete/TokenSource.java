@@ -0,0 +1,52 @@
+package org.example.interprete;
+
+
+/**
+ * 词法单元的来源：按空白字符分隔，只记录当前单词的起止位置
+ *   比较关键字、解析数字都直接在原始内容上进行，只有变量名、PRINTLN 文本这类需要保留的内容才会创建 String
+ *
+ *   分隔符与 StringTokenizer 的默认分隔符相同：空格、\t、\n、\r、\f
+ */
+interface TokenSource {
+    /**
+     * 移动到下一个单词
+     * @return 没有更多单词时返回 false
+     */
+    boolean advance();
+
+    /**
+     * 当前是否有单词
+     * @return
+     */
+    boolean hasToken();
+
+    /**
+     * 当前单词是否与关键字相同，不创建 String
+     * @param keyword
+     * @return
+     */
+    boolean matches(String keyword);
+
+    /**
+     * 把当前单词解析成 int，不创建 String
+     * @return
+     * @throws NumberFormatException 没有当前单词或者不是合法的 int
+     */
+    int parseInt();
+
+    /**
+     * 当前单词的文本
+     * @return 没有当前单词时返回 null
+     */
+    String text();
+
+    /**
+     * 当前单词在源中的起始位置（字符或字节偏移）
+     * @return
+     */
+    long position();
+
+    static boolean isDelimiter(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+}
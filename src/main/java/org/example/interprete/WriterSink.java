@@ -0,0 +1,106 @@
+package org.example.interprete;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * 批量写入 Writer：先写入自己的字符缓冲区，缓冲区满了才调用一次 Writer.write
+ */
+class WriterSink implements OutputSink {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Writer writer;
+    private final char[] buffer;
+    private int position;
+
+    public WriterSink(Writer writer) {
+        this(writer, DEFAULT_BUFFER_SIZE);
+    }
+
+    public WriterSink(Writer writer, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        }
+        this.writer = writer;
+        this.buffer = new char[bufferSize];
+    }
+
+    @Override
+    public void println(CharSequence line) {
+        append(line);
+        append(LINE_SEPARATOR);
+    }
+
+    @Override
+    public void writeLines(CharSequence block, int lineCount) {
+        if ("\n".equals(LINE_SEPARATOR)) {
+            append(block);
+        } else {
+            OutputSink.super.writeLines(block, lineCount);
+        }
+    }
+
+    private void append(CharSequence text) {
+        int length = text.length();
+        if (length > buffer.length) {
+            // 超过缓冲区大小的内容直接写出
+            flushBuffer();
+            write(text.toString());
+            return;
+        }
+        if (position + length > buffer.length) {
+            flushBuffer();
+        }
+        if (text instanceof String) {
+            ((String) text).getChars(0, length, buffer, position);
+        } else if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(0, length, buffer, position);
+        } else {
+            for (int i = 0; i < length; i++) {
+                buffer[position + i] = text.charAt(i);
+            }
+        }
+        position += length;
+    }
+
+    private void flushBuffer() {
+        if (position > 0) {
+            try {
+                writer.write(buffer, 0, position);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position = 0;
+        }
+    }
+
+    private void write(String text) {
+        try {
+            writer.write(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void flush() {
+        flushBuffer();
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        flushBuffer();
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
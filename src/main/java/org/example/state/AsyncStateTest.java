@@ -0,0 +1,47 @@
+package org.example.state;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步状态处理：付款状态需要查询支付网关，查询期间不阻塞线程
+ *   上万个订单同时等待支付结果，只使用一个延迟调度线程
+ */
+public class AsyncStateTest {
+    public static void main(String[] args) {
+        StubPaymentGateway gateway = new StubPaymentGateway(50, 0.8);
+
+        OrderContext single = new OrderContext(gateway);
+        System.out.println("single order: "
+                + single.advanceAsync(10).join().getClass().getSimpleName());
+
+        // 支付网关属于订单，同步处理和异步处理的判断一致
+        PaymentGateway declined = orderContext -> CompletableFuture.completedFuture(false);
+        OrderContext syncOrder = new OrderContext(declined);
+        syncOrder.advance();
+        syncOrder.advance();
+        System.out.println("declined, sync: " + syncOrder.advance().getClass().getSimpleName()
+                + ", async: " + new OrderContext(declined).advanceAsync(3).join().getClass().getSimpleName());
+
+        int orders = 20_000;
+        OrderContext[] contexts = new OrderContext[orders];
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[orders];
+        long begin = System.nanoTime();
+        for (int i = 0; i < orders; i++) {
+            contexts[i] = new OrderContext(gateway);
+            futures[i] = contexts[i].advanceAsync(10);
+        }
+        CompletableFuture.allOf(futures).join();
+        long nanos = System.nanoTime() - begin;
+
+        int finished = 0;
+        for (OrderContext context : contexts) {
+            if (context.getCurState() == OrderContext.FINISH_ORDER_STATE) {
+                finished++;
+            }
+        }
+        System.out.printf("%d orders, %d gateway calls of %d ms each, finished %d, in %d ms, peak threads %d%n",
+                orders, gateway.getCalls(), gateway.getLatencyMillis(), finished, nanos / 1_000_000,
+                ManagementFactory.getThreadMXBean().getPeakThreadCount());
+    }
+}
@@ -0,0 +1,25 @@
+package org.example.state;
+
+class FinishOrderState extends OrderState{
+
+    @Override
+    public void showStateInfo(OrderContext orderContext) {
+        System.out.println("当前状态：订单完成");
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return true;
+    }
+
+    @Override
+    public boolean isDone() {
+        return true;
+    }
+
+    public OrderState handle(OrderContext orderContext){
+        System.out.println("订单完成并记录状态");
+        return this;
+    }
+
+}
@@ -0,0 +1,272 @@
+package org.example.state;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 状态对象不再持有 context，context 在 handle 时传入，
+ * 所有订单共用一组状态对象，每个订单只有 context 本身和一个当前状态的引用
+ *
+ * 状态转换通过 CAS 完成：只有订单仍处于预期状态时才转换，
+ * 支付回调和超时同时处理同一个订单时，不会丢失转换，也不会重复转换
+ * 当前状态和进入该状态的时间放在同一个不可变的 StateEntry 中一起 CAS，停留时间总是取自被替换的那一条记录
+ *
+ * 支付网关属于订单，创建时传入，状态对象通过 context 访问，不保存任何订单相关的内容
+ *
+ * 与支付网关一样，OrderMetrics 在创建时传入，记录该订单每个状态的停留时间、每种转换的处理耗时和成功失败次数，
+ * 多个订单可以共用一个 OrderMetrics；没有传入时不记录
+ */
+class OrderContext{
+    public static final PreOrderState PRE_ORDER_STATE = new PreOrderState();
+    public static final RealOrderState REAL_ORDER_STATE = new RealOrderState();
+    public static final PayOrderState PAY_ORDER_STATE = new PayOrderState();
+    public static final FinishOrderState FINISH_ORDER_STATE = new FinishOrderState();
+    static {
+        PRE_ORDER_STATE.setSuccessOrderState(REAL_ORDER_STATE);
+        PRE_ORDER_STATE.setFailOrderState(PRE_ORDER_STATE);
+
+        REAL_ORDER_STATE.setSuccessOrderState(PAY_ORDER_STATE);
+        REAL_ORDER_STATE.setFailOrderState(PRE_ORDER_STATE);
+
+        PAY_ORDER_STATE.setSuccessOrderState(FINISH_ORDER_STATE);
+        PAY_ORDER_STATE.setFailOrderState(PRE_ORDER_STATE);
+    }
+
+    private static final VarHandle ORDER_STATE;
+    static {
+        try {
+            ORDER_STATE = MethodHandles.lookup().findVarHandle(OrderContext.class, "entry", StateEntry.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // 不统计时使用的状态记录，所有订单共用，转换时不需要创建对象
+    private static final StateEntry[] UNTIMED = {
+            new StateEntry(PRE_ORDER_STATE, 0), new StateEntry(REAL_ORDER_STATE, 0),
+            new StateEntry(PAY_ORDER_STATE, 0), new StateEntry(FINISH_ORDER_STATE, 0)};
+
+
+    // 当前状态及进入该状态的时间
+    private volatile StateEntry entry;
+    // 查询订单是否已经支付
+    private final PaymentGateway paymentGateway;
+    // 统计，为 null 时不统计
+    private final OrderMetrics metrics;
+
+    public OrderContext() {
+        this(PaymentGateway.PAID);
+    }
+
+    public OrderContext(PaymentGateway paymentGateway) {
+        this(paymentGateway, null);
+    }
+
+    public OrderContext(PaymentGateway paymentGateway, OrderMetrics metrics) {
+        this.paymentGateway = paymentGateway;
+        this.metrics = metrics;
+        this.entry = newEntry(PRE_ORDER_STATE, metrics != null);
+    }
+
+    /**
+     * 统计时记录进入状态的时间，否则使用共用的记录
+     */
+    private static StateEntry newEntry(OrderState state, boolean timed) {
+        if (timed) {
+            return new StateEntry(state, System.nanoTime());
+        }
+        for (StateEntry untimed : UNTIMED) {
+            if (untimed.state == state) {
+                return untimed;
+            }
+        }
+        return new StateEntry(state, 0);
+    }
+
+    public OrderMetrics getMetrics(){
+        return this.metrics;
+    }
+
+    /**
+     * 订单仍处于 expected 状态时转换到 next
+     * @param expected
+     * @param next
+     * @return 是否转换成功
+     */
+    public boolean compareAndSetState(OrderState expected, OrderState next){
+        OrderMetrics orderMetrics = this.metrics;
+        while (true) {
+            StateEntry current = this.entry;
+            if (current.state != expected) {
+                return false;
+            }
+            if (next == expected) {
+                // 停留在原状态，进入时间不变
+                return true;
+            }
+            StateEntry replacement = newEntry(next, orderMetrics != null);
+            if (ORDER_STATE.compareAndSet(this, current, replacement)) {
+                if (orderMetrics != null) {
+                    orderMetrics.recordDwell(expected, replacement.enteredAt - current.enteredAt);
+                }
+                return true;
+            }
+            // 记录被替换（比如 setCurState 设置了同一个状态），按新的记录重新比较
+        }
+    }
+
+    /**
+     * 不输出日志的转换，被其他线程抢先时按新的状态重试，直到转换成功
+     * @return 转换后的状态
+     */
+    public OrderState advance(){
+        OrderMetrics orderMetrics = this.metrics;
+        while (true) {
+            OrderState current = getCurState();
+            long begin = orderMetrics == null ? 0 : System.nanoTime();
+            boolean success = current.isSuccess(this);
+            OrderState next = current.nextState(success);
+            if (next == current || compareAndSetState(current, next)) {
+                recordOutcome(current, success);
+                if (orderMetrics != null) {
+                    orderMetrics.recordHandle(current, next, System.nanoTime() - begin);
+                }
+                return next;
+            }
+        }
+    }
+
+    /**
+     * 不输出日志的转换，只有订单仍处于 expected 状态时才转换，否则拒绝，不重试
+     * @param expected 调用方认为订单所处的状态
+     * @return 是否转换成功
+     */
+    public boolean tryAdvance(OrderState expected){
+        OrderMetrics orderMetrics = this.metrics;
+        long begin = orderMetrics == null ? 0 : System.nanoTime();
+        boolean success = expected.isSuccess(this);
+        OrderState next = expected.nextState(success);
+        if (next == expected) {
+            return false;
+        }
+        if (compareAndSetState(expected, next)) {
+            recordOutcome(expected, success);
+            if (orderMetrics != null) {
+                orderMetrics.recordHandle(expected, next, System.nanoTime() - begin);
+            }
+            return true;
+        }
+        recordRejected(expected);
+        return false;
+    }
+
+    /**
+     * 记录一次已经生效的处理结果，转换被拒绝时不记录
+     */
+    void recordOutcome(OrderState state, boolean success){
+        OrderMetrics orderMetrics = this.metrics;
+        if (orderMetrics != null && state.getSucessOrderState() != null) {
+            orderMetrics.recordOutcome(state, success);
+        }
+    }
+
+    /**
+     * 记录一次因为订单已经被其他操作转换而被拒绝的转换
+     */
+    void recordRejected(OrderState state){
+        OrderMetrics orderMetrics = this.metrics;
+        if (orderMetrics != null) {
+            orderMetrics.recordRejected(state);
+        }
+    }
+
+    /**
+     * 异步处理当前状态：等待状态的异步判断结果后再转换，等待期间不占用线程
+     *   状态没有结束时保持不变；判断期间订单被其他操作转换时拒绝，返回的 future 以 IllegalStateException 结束
+     * @return 转换后的状态
+     */
+    public CompletableFuture<OrderState> handleAsync(){
+        OrderState current = getCurState();
+        OrderMetrics orderMetrics = this.metrics;
+        long begin = orderMetrics == null ? 0 : System.nanoTime();
+        return current.isDoneAsync(this).thenCompose(done -> {
+            if (!done) {
+                return CompletableFuture.completedFuture(current);
+            }
+            return current.isSuccessAsync(this).thenApply(success -> {
+                OrderState next = current.nextState(success);
+                if (next != current && !compareAndSetState(current, next)) {
+                    recordRejected(current);
+                    throw new IllegalStateException("order state changed while "
+                            + current.getClass().getSimpleName() + " was being handled");
+                }
+                recordOutcome(current, success);
+                if (orderMetrics != null) {
+                    orderMetrics.recordHandle(current, next, System.nanoTime() - begin);
+                }
+                return next;
+            });
+        }).toCompletableFuture();
+    }
+
+    /**
+     * 异步地连续处理，直到没有下一个状态（订单完成）或者处理了 maxSteps 次
+     * @param maxSteps
+     * @return 最后的状态
+     */
+    public CompletableFuture<OrderState> advanceAsync(int maxSteps){
+        OrderState current = getCurState();
+        if (maxSteps <= 0 || current.getSucessOrderState() == null) {
+            return CompletableFuture.completedFuture(current);
+        }
+        return handleAsync().thenCompose(state -> advanceAsync(maxSteps - 1));
+    }
+
+    public PaymentGateway getPaymentGateway(){
+        return this.paymentGateway;
+    }
+
+    public void setCurState(OrderState orderState){
+        this.entry = newEntry(orderState, this.metrics != null);
+    }
+
+    public OrderState getCurState(){
+        return this.entry.state;
+    }
+
+    public void showStateInfo(){
+        getCurState().showStateInfo(this);
+    }
+
+    /**
+     * 处理当前状态，耗时记在实际发生的 (from, to) 转换上，转换被拒绝时只记录拒绝次数
+     * @return 转换后的状态，被拒绝时为 null
+     */
+    public OrderState handle(){
+        OrderMetrics orderMetrics = this.metrics;
+        OrderState from = getCurState();
+        if (orderMetrics == null) {
+            return from.handle(this);
+        }
+        long begin = System.nanoTime();
+        OrderState to = from.handle(this);
+        if (to != null) {
+            orderMetrics.recordHandle(from, to, System.nanoTime() - begin);
+        }
+        return to;
+    }
+
+    /**
+     * 当前状态和进入该状态的时间（不统计时为 0），不可变，整体替换
+     */
+    private static final class StateEntry {
+        final OrderState state;
+        final long enteredAt;
+
+        StateEntry(OrderState state, long enteredAt) {
+            this.state = state;
+            this.enteredAt = enteredAt;
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package org.example.state;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 订单状态日志：每次状态转换追加一条定长记录，重启后由 最近的快照 + 快照之后的日志 恢复 OrderStateStore
+ *
+ *   记录（16 字节，大端）：int 订单编号, byte from, byte to, short 填充, long 时间戳（毫秒）
+ *   日志按段存放，每段固定 SEGMENT_RECORDS 条记录，文件名是第一条记录的序号，整段内存映射后直接写入；
+ *   时间戳最后写入，为 0 表示这条记录没有写完，恢复时从这里结束
+ *
+ *   快照：int magic, long 序号, int 订单数, 每个订单一个 byte 的状态
+ *   快照表示序号之前的记录都已经包含在内，先写临时文件再原子替换，完全被快照覆盖的日志段随后删除
+ *
+ *   只有状态真的改变时才记录；force() 只在快照和关闭时调用，进程崩溃不会丢失记录（数据在页缓存中），
+ *   操作系统崩溃可能丢失最后一次 force 之后的记录
+ *
+ *   不是线程安全的，与 OrderStateStore 一样由一个线程写入
+ */
+public class OrderJournal implements AutoCloseable {
+    static final int RECORD_SIZE = 16;
+    // 每个日志段的记录数，一段 64MB
+    static final int SEGMENT_RECORDS = 1 << 22;
+    static final int SNAPSHOT_MAGIC = 0x4F534E50; // "OSNP"
+    private static final String SNAPSHOT = "orders.snapshot";
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final OrderStateStore store;
+    // 每隔多少条记录做一次快照
+    private final long snapshotInterval;
+    private final Recovery recovery;
+    // 当前写入的日志段
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    // 下一条记录的序号
+    private long sequence;
+    // 最近一次快照的序号
+    private long snapshotSequence;
+
+    private OrderJournal(Path directory, OrderStateStore store, long snapshotInterval,
+                         long sequence, long snapshotSequence, Recovery recovery) {
+        this.directory = directory;
+        this.store = store;
+        this.snapshotInterval = snapshotInterval;
+        this.sequence = sequence;
+        this.snapshotSequence = snapshotSequence;
+        this.recovery = recovery;
+        openSegment(sequence - sequence % SEGMENT_RECORDS);
+    }
+
+    /**
+     * 打开目录中的日志，有快照和日志时先恢复
+     * @param directory
+     * @param table
+     * @param orders 订单数，与快照中的订单数不一致时抛出异常
+     * @param snapshotInterval 每隔多少条记录做一次快照
+     * @return
+     */
+    public static OrderJournal open(Path directory, OrderStateTable table, int orders, long snapshotInterval) {
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("snapshotInterval must be positive: " + snapshotInterval);
+        }
+        long begin = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+            byte[] states = new byte[orders];
+            long snapshotSequence = readSnapshot(directory.resolve(SNAPSHOT), states);
+            long sequence = snapshotSequence;
+            long replayed = 0;
+            for (long start : listSegments(directory)) {
+                if (start + SEGMENT_RECORDS <= snapshotSequence) {
+                    continue;
+                }
+                long end = replay(segmentPath(directory, start), start, Math.max(start, snapshotSequence), states);
+                replayed += end - Math.max(start, snapshotSequence);
+                sequence = end;
+            }
+            Recovery recovery = new Recovery(snapshotSequence, replayed, System.nanoTime() - begin);
+            return new OrderJournal(directory, new OrderStateStore(table, states), snapshotInterval,
+                    sequence, snapshotSequence, recovery);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long readSnapshot(Path path, byte[] states) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + Integer.BYTES);
+            readFully(channel, header);
+            header.flip();
+            if (header.getInt() != SNAPSHOT_MAGIC) {
+                throw new IllegalStateException("not an order snapshot: " + path);
+            }
+            long sequence = header.getLong();
+            int size = header.getInt();
+            if (size != states.length) {
+                throw new IllegalStateException("snapshot has " + size + " orders, expected " + states.length);
+            }
+            readFully(channel, ByteBuffer.wrap(states));
+            return sequence;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IllegalStateException("truncated snapshot");
+            }
+        }
+    }
+
+    /**
+     * 重放一个日志段
+     * @return 最后一条完整记录之后的序号
+     */
+    private static long replay(Path path, long start, long from, byte[] states) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int records = (int) (channel.size() / RECORD_SIZE);
+            for (int i = (int) (from - start); i < records; i++) {
+                int offset = i * RECORD_SIZE;
+                if (buffer.getLong(offset + 8) == 0) {
+                    return start + i;
+                }
+                states[buffer.getInt(offset)] = buffer.get(offset + 5);
+            }
+            return start + records;
+        }
+    }
+
+    private static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                starts.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(starts);
+        return starts;
+    }
+
+    private static Path segmentPath(Path directory, long start) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, start, SEGMENT_SUFFIX));
+    }
+
+    private void openSegment(long start) {
+        try (FileChannel channel = FileChannel.open(segmentPath(directory, start),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // 映射超出文件大小的区域时文件会被扩展，新区域全是 0
+            this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) SEGMENT_RECORDS * RECORD_SIZE);
+            this.segmentStart = start;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 处理订单当前状态并记录转换
+     * @param orderId
+     * @return 转换后的状态编号
+     */
+    public byte handle(int orderId) {
+        byte from = store.getState(orderId);
+        byte to = store.handle(orderId);
+        if (from != to) {
+            append(orderId, from, to);
+        }
+        return to;
+    }
+
+    /**
+     * 按指定的处理结果转换并记录
+     * @param orderId
+     * @param success
+     * @return 转换后的状态编号
+     */
+    public byte transition(int orderId, boolean success) {
+        byte from = store.getState(orderId);
+        byte to = store.transition(orderId, success);
+        if (from != to) {
+            append(orderId, from, to);
+        }
+        return to;
+    }
+
+    private void append(int orderId, byte from, byte to) {
+        if (sequence - segmentStart == SEGMENT_RECORDS) {
+            segment.force();
+            openSegment(sequence);
+        }
+        int offset = (int) (sequence - segmentStart) * RECORD_SIZE;
+        segment.putInt(offset, orderId);
+        segment.put(offset + 4, from);
+        segment.put(offset + 5, to);
+        segment.putShort(offset + 6, (short) 0);
+        // 时间戳最后写入，表示记录完整
+        segment.putLong(offset + 8, System.currentTimeMillis());
+        sequence++;
+        if (sequence - snapshotSequence >= snapshotInterval) {
+            snapshot();
+        }
+    }
+
+    /**
+     * 立即生成快照，并删除已经完全包含在快照中的日志段
+     */
+    public void snapshot() {
+        byte[] states = store.toArray();
+        Path temp = directory.resolve(SNAPSHOT + ".tmp");
+        try {
+            segment.force();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + Integer.BYTES);
+                header.putInt(SNAPSHOT_MAGIC).putLong(sequence).putInt(states.length).flip();
+                ByteBuffer body = ByteBuffer.wrap(states);
+                while (header.hasRemaining() || body.hasRemaining()) {
+                    channel.write(new ByteBuffer[]{header, body});
+                }
+                channel.force(true);
+            }
+            Files.move(temp, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshotSequence = sequence;
+            for (long start : listSegments(directory)) {
+                if (start + SEGMENT_RECORDS <= snapshotSequence && start != segmentStart) {
+                    Files.deleteIfExists(segmentPath(directory, start));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public OrderStateStore getStore() {
+        return store;
+    }
+
+    /**
+     * 已经写入的记录数（包括快照之前的）
+     * @return
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * 打开时的恢复统计
+     * @return
+     */
+    public Recovery getRecovery() {
+        return recovery;
+    }
+
+    @Override
+    public void close() {
+        segment.force();
+    }
+
+    /**
+     * 恢复统计
+     */
+    public static final class Recovery {
+        private final long snapshotSequence;
+        private final long replayedRecords;
+        private final long nanos;
+
+        Recovery(long snapshotSequence, long replayedRecords, long nanos) {
+            this.snapshotSequence = snapshotSequence;
+            this.replayedRecords = replayedRecords;
+            this.nanos = nanos;
+        }
+
+        public long getSnapshotSequence() {
+            return snapshotSequence;
+        }
+
+        public long getReplayedRecords() {
+            return replayedRecords;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "snapshot at " + snapshotSequence + ", replayed " + replayedRecords + " records in "
+                    + nanos / 1_000_000 + " ms";
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        OrderStateTable table = OrderStateTable.compile(OrderContext.PRE_ORDER_STATE);
+        // 订单完成后不再转换，成功率 80% 时平均每个订单约 4.4 次转换，订单数要足够多
+        int orders = 20_000_000;
+        long transitions = 50_000_000;
+        // 只重放日志 vs 快照 + 日志尾部
+        measure(table, orders, transitions, Long.MAX_VALUE);
+        measure(table, orders, transitions, 16_000_000);
+    }
+
+    private static void measure(OrderStateTable table, int orders, long transitions, long snapshotInterval) throws IOException {
+        Path directory = Files.createTempDirectory("order-journal");
+        try {
+            byte[] expected;
+            long begin = System.nanoTime();
+            try (OrderJournal journal = OrderJournal.open(directory, table, orders, snapshotInterval)) {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (journal.getSequence() < transitions) {
+                    journal.transition(random.nextInt(orders), random.nextInt(10) < 8);
+                }
+                expected = journal.getStore().toArray();
+            }
+            long writeNanos = System.nanoTime() - begin;
+
+            try (OrderJournal recovered = OrderJournal.open(directory, table, orders, snapshotInterval)) {
+                System.out.printf("snapshot interval %s: wrote %d transitions in %d ms; recovery: %s, same state %b%n",
+                        snapshotInterval == Long.MAX_VALUE ? "none" : String.valueOf(snapshotInterval),
+                        transitions, writeNanos / 1_000_000, recovered.getRecovery(),
+                        Arrays.equals(expected, recovered.getStore().toArray()));
+            }
+        } finally {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    Files.delete(path);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+}
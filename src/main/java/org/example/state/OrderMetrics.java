@@ -0,0 +1,295 @@
+package org.example.state;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 订单状态统计：每个状态的停留时间、每种 (from, to) 转换的处理耗时、每个状态处理成功和失败的次数，
+ *   以及因为订单已被其他操作转换而被拒绝的次数
+ *   计数全部使用 LongAdder，多个线程同时记录时分散到不同的 cell，不会争用同一个缓存行
+ *   直方图按 2 的幂分桶，第 i 个桶统计 [2^(i-1), 2^i) 纳秒的值，记录时只做一次 numberOfLeadingZeros
+ *
+ *   snapshot() 返回某一时刻的副本，记录与读取可以同时进行，副本中各个计数之间不保证严格一致
+ */
+public class OrderMetrics {
+    private final OrderStateTable table;
+    private final Histogram[] dwell;
+    private final Histogram[] handle;
+    private final LongAdder[] successes;
+    private final LongAdder[] failures;
+    private final LongAdder[] rejected;
+
+    public OrderMetrics() {
+        this(OrderStateTable.compile(OrderContext.PRE_ORDER_STATE));
+    }
+
+    public OrderMetrics(OrderStateTable table) {
+        this.table = table;
+        int size = table.size();
+        this.dwell = new Histogram[size];
+        this.handle = new Histogram[size * size];
+        this.successes = new LongAdder[size];
+        this.failures = new LongAdder[size];
+        this.rejected = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            dwell[i] = new Histogram();
+            successes[i] = new LongAdder();
+            failures[i] = new LongAdder();
+            rejected[i] = new LongAdder();
+        }
+        for (int i = 0; i < handle.length; i++) {
+            handle[i] = new Histogram();
+        }
+    }
+
+    /**
+     * 订单离开 state 时，记录在 state 中停留的时间
+     */
+    void recordDwell(OrderState state, long nanos) {
+        dwell[table.idOf(state)].record(nanos);
+    }
+
+    /**
+     * 一次 handle 从 from 转换到 to 的耗时
+     */
+    void recordHandle(OrderState from, OrderState to, long nanos) {
+        handle[table.idOf(from) * table.size() + table.idOf(to)].record(nanos);
+    }
+
+    void recordOutcome(OrderState state, boolean success) {
+        (success ? successes : failures)[table.idOf(state)].increment();
+    }
+
+    /**
+     * 从 state 出发的转换被拒绝（订单已经不在 state）
+     */
+    void recordRejected(OrderState state) {
+        rejected[table.idOf(state)].increment();
+    }
+
+    /**
+     * 当前统计的副本
+     * @return
+     */
+    public Snapshot snapshot() {
+        int size = table.size();
+        HistogramSnapshot[] dwellSnapshot = new HistogramSnapshot[size];
+        HistogramSnapshot[] handleSnapshot = new HistogramSnapshot[size * size];
+        long[] successCounts = new long[size];
+        long[] failureCounts = new long[size];
+        long[] rejectedCounts = new long[size];
+        for (int i = 0; i < size; i++) {
+            dwellSnapshot[i] = dwell[i].snapshot();
+            successCounts[i] = successes[i].sum();
+            failureCounts[i] = failures[i].sum();
+            rejectedCounts[i] = rejected[i].sum();
+        }
+        for (int i = 0; i < handleSnapshot.length; i++) {
+            handleSnapshot[i] = handle[i].snapshot();
+        }
+        return new Snapshot(table, dwellSnapshot, handleSnapshot, successCounts, failureCounts, rejectedCounts);
+    }
+
+    /**
+     * 按 2 的幂分桶的直方图
+     */
+    static final class Histogram {
+        // 0 单独一个桶，其余按最高位分桶，共 65 个
+        static final int BUCKETS = 65;
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        private final LongAdder sum = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long value) {
+            long v = Math.max(value, 0);
+            buckets[64 - Long.numberOfLeadingZeros(v)].increment();
+            sum.add(v);
+        }
+
+        HistogramSnapshot snapshot() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return new HistogramSnapshot(counts, sum.sum());
+        }
+    }
+
+    /**
+     * 直方图的副本
+     */
+    public static final class HistogramSnapshot {
+        private final long[] buckets;
+        private final long sum;
+        private final long count;
+
+        HistogramSnapshot(long[] buckets, long sum) {
+            this.buckets = buckets;
+            this.sum = sum;
+            long count = 0;
+            for (long bucket : buckets) {
+                count += bucket;
+            }
+            this.count = count;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * 百分位数的上界（所在桶的上界），误差不超过 2 倍
+         * @param percentile 0 到 100
+         * @return 纳秒
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count %d, mean %s, p50 <= %s, p99 <= %s", count,
+                    format(getMean()), format(getPercentile(50)), format(getPercentile(99)));
+        }
+
+        private static String format(long nanos) {
+            if (nanos >= 1_000_000) {
+                return nanos / 1_000_000 + "ms";
+            }
+            if (nanos >= 1_000) {
+                return nanos / 1_000 + "us";
+            }
+            return nanos + "ns";
+        }
+    }
+
+    /**
+     * 统计的副本
+     */
+    public static final class Snapshot {
+        private final OrderStateTable table;
+        private final HistogramSnapshot[] dwell;
+        private final HistogramSnapshot[] handle;
+        private final long[] successes;
+        private final long[] failures;
+        private final long[] rejected;
+
+        Snapshot(OrderStateTable table, HistogramSnapshot[] dwell, HistogramSnapshot[] handle,
+                 long[] successes, long[] failures, long[] rejected) {
+            this.table = table;
+            this.dwell = dwell;
+            this.handle = handle;
+            this.successes = successes;
+            this.failures = failures;
+            this.rejected = rejected;
+        }
+
+        public HistogramSnapshot getDwell(OrderState state) {
+            return dwell[table.idOf(state)];
+        }
+
+        public HistogramSnapshot getHandle(OrderState from, OrderState to) {
+            return handle[table.idOf(from) * table.size() + table.idOf(to)];
+        }
+
+        public long getSuccesses(OrderState state) {
+            return successes[table.idOf(state)];
+        }
+
+        public long getFailures(OrderState state) {
+            return failures[table.idOf(state)];
+        }
+
+        public long getRejected(OrderState state) {
+            return rejected[table.idOf(state)];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (byte i = 0; i < table.size(); i++) {
+                builder.append(table.getName(i)).append(": success ").append(successes[i])
+                        .append(", fail ").append(failures[i]).append(", rejected ").append(rejected[i]).append(", dwell ").append(dwell[i]).append('\n');
+            }
+            for (byte from = 0; from < table.size(); from++) {
+                for (byte to = 0; to < table.size(); to++) {
+                    HistogramSnapshot histogram = handle[from * table.size() + to];
+                    if (histogram.getCount() != 0) {
+                        builder.append("handle ").append(table.getName(from)).append(" -> ")
+                                .append(table.getName(to)).append(": ").append(histogram).append('\n');
+                    }
+                }
+            }
+            return builder.toString();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        // 开销：同样的转换，不统计 vs 统计
+        int orders = 1_000_000;
+        for (int round = 1; round <= 3; round++) {
+            long off = advanceAll(orders, null);
+            long on = advanceAll(orders, new OrderMetrics());
+            System.out.printf("round %d: %d orders x 3 transitions, metrics off %d ms, on %d ms%n",
+                    round, orders, off / 1_000_000, on / 1_000_000);
+        }
+
+        // 付款状态等待支付网关，停留时间明显更长
+        OrderMetrics metrics = new OrderMetrics();
+        StubPaymentGateway gateway = new StubPaymentGateway(20, 0.9);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    new OrderContext(gateway, metrics).advanceAsync(10).join();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.print(metrics.snapshot());
+    }
+
+    private static long advanceAll(int orders, OrderMetrics metrics) {
+        OrderContext[] contexts = new OrderContext[orders];
+        for (int i = 0; i < orders; i++) {
+            contexts[i] = new OrderContext(PaymentGateway.PAID, metrics);
+        }
+        long begin = System.nanoTime();
+        for (int step = 0; step < 3; step++) {
+            for (OrderContext context : contexts) {
+                context.advance();
+            }
+        }
+        return System.nanoTime() - begin;
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.state;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+abstract class OrderState{
+    private OrderState successOrderState;
+    private OrderState failOrderState;
+
+    public OrderState getSucessOrderState() {
+        return successOrderState;
+    }
+
+    public void setSuccessOrderState(OrderState sucessOrderState) {
+        this.successOrderState = sucessOrderState;
+    }
+
+    public OrderState getFailOrderState() {
+        return failOrderState;
+    }
+
+    public void setFailOrderState(OrderState failOrderState) {
+        this.failOrderState = failOrderState;
+    }
+
+    public abstract void showStateInfo(OrderContext orderContext);
+
+    public abstract boolean isSuccess();
+
+    public abstract boolean isDone();
+
+    /**
+     * 处理当前状态并转换
+     * @param orderContext
+     * @return 转换后的状态，没有下一个状态时为自身，转换被拒绝时为 null
+     */
+    public abstract OrderState handle(OrderContext orderContext);
+
+    /**
+     * 从当前状态转换到 next，订单已经被其他线程转换到别的状态时拒绝本次转换
+     *   并发调用时被拒绝是正常情况，不输出日志，只计入统计
+     * @param orderContext
+     * @param next
+     * @return 实际转换到的状态，被拒绝时为 null
+     */
+    protected OrderState transition(OrderContext orderContext, OrderState next) {
+        if (orderContext.compareAndSetState(this, next)) {
+            orderContext.recordOutcome(this, next == this.successOrderState);
+            return next;
+        }
+        orderContext.recordRejected(this);
+        return null;
+    }
+
+    /**
+     * 按处理结果得到的下一个状态，没有下一个状态时为自身
+     * @return
+     */
+    public OrderState nextState() {
+        return nextState(isSuccess());
+    }
+
+    /**
+     * 按指定的处理结果得到的下一个状态，没有下一个状态时为自身
+     * @param success
+     * @return
+     */
+    public OrderState nextState(boolean success) {
+        if (this.successOrderState == null) {
+            return this;
+        }
+        return success ? this.successOrderState : this.failOrderState;
+    }
+
+    /**
+     * 按订单判断是否成功，结果与订单相关（比如需要查询支付网关）的状态重写该方法
+     * 默认直接返回 isSuccess() 的结果
+     * @param orderContext
+     * @return
+     */
+    public boolean isSuccess(OrderContext orderContext) {
+        return isSuccess();
+    }
+
+    /**
+     * 异步判断是否成功，需要访问外部系统的状态重写该方法，不阻塞调用线程
+     * 默认直接返回 isSuccess(orderContext) 的结果
+     * @param orderContext
+     * @return
+     */
+    public CompletionStage<Boolean> isSuccessAsync(OrderContext orderContext) {
+        return CompletableFuture.completedFuture(isSuccess(orderContext));
+    }
+
+    /**
+     * 异步判断是否结束，默认直接返回 isDone() 的结果
+     * @param orderContext
+     * @return
+     */
+    public CompletionStage<Boolean> isDoneAsync(OrderContext orderContext) {
+        return CompletableFuture.completedFuture(isDone());
+    }
+
+}
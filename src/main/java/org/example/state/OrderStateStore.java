@@ -0,0 +1,122 @@
+package org.example.state;
+
+/**
+ * 订单状态存储：每个订单一个 byte，按订单编号下标存放在一个连续的数组中
+ *   一次转换只读写数组中的一个元素，不创建任何对象，也不输出日志
+ *
+ *   不是线程安全的，同一个订单只能由一个线程转换
+ */
+class OrderStateStore {
+    private final OrderStateTable table;
+    private final byte[] states;
+
+    /**
+     * 所有订单都处于初始状态
+     * @param table
+     * @param size 订单数
+     */
+    OrderStateStore(OrderStateTable table, int size) {
+        this.table = table;
+        // 初始状态编号为 0，新数组不需要再填充
+        this.states = new byte[size];
+    }
+
+    /**
+     * 由已有的状态数组创建，比如从快照中恢复，数组不复制
+     * @param table
+     * @param states
+     */
+    OrderStateStore(OrderStateTable table, byte[] states) {
+        this.table = table;
+        this.states = states;
+    }
+
+    /**
+     * 处理订单当前状态，按处理结果转换到下一个状态
+     * @param orderId
+     * @return 转换后的状态编号
+     */
+    byte handle(int orderId) {
+        byte state = states[orderId];
+        byte next = table.next(state, table.getState(state).isSuccess());
+        states[orderId] = next;
+        return next;
+    }
+
+    /**
+     * 按指定的处理结果转换
+     * @param orderId
+     * @param success
+     * @return 转换后的状态编号
+     */
+    byte transition(int orderId, boolean success) {
+        byte next = table.next(states[orderId], success);
+        states[orderId] = next;
+        return next;
+    }
+
+    byte getState(int orderId) {
+        return states[orderId];
+    }
+
+    void setState(int orderId, byte state) {
+        states[orderId] = state;
+    }
+
+    /**
+     * 批量转换：一次遍历按给定的处理结果转换一批订单，不输出日志
+     *   同一个订单在批次中出现多次时按顺序依次转换
+     * @param orderIds 订单编号
+     * @param outcomes 与 orderIds 一一对应的处理结果，true 为成功
+     * @return 每种 (from, to) 转换的次数，包括状态没有变化的
+     */
+    TransitionCounts transitionAll(int[] orderIds, boolean[] outcomes) {
+        if (orderIds.length != outcomes.length) {
+            throw new IllegalArgumentException("orderIds.length " + orderIds.length
+                    + " != outcomes.length " + outcomes.length);
+        }
+        final byte[] states = this.states;
+        final OrderStateTable table = this.table;
+        final int size = table.size();
+        long[] counts = new long[size * size];
+        for (int i = 0; i < orderIds.length; i++) {
+            int orderId = orderIds[i];
+            byte from = states[orderId];
+            byte to = table.next(from, outcomes[i]);
+            states[orderId] = to;
+            counts[from * size + to]++;
+        }
+        return new TransitionCounts(table, counts);
+    }
+
+    /**
+     * 处于某个状态的订单数
+     * @param state
+     * @return
+     */
+    int count(byte state) {
+        int count = 0;
+        for (byte s : states) {
+            if (s == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 状态数组的副本，用于生成快照
+     * @return
+     */
+    byte[] toArray() {
+        return states.clone();
+    }
+
+    OrderStateTable getTable() {
+        return table;
+    }
+
+    int size() {
+        return states.length;
+    }
+}
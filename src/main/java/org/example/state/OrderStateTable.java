@@ -0,0 +1,178 @@
+package org.example.state;
+
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 表驱动的订单状态机：把 OrderState 对象之间的 成功 / 失败 转换关系编译成一张转换表
+ *   状态编号是 byte，从初始状态开始按广度优先的顺序编号，初始状态编号为 0
+ *   transitions[id * 2] 是成功后的状态，transitions[id * 2 + 1] 是失败后的状态，
+ *   没有指定下一个状态（比如订单完成）时转换到自身
+ *
+ *   编译完成后转换只查表，不再经过 OrderState 对象之间的引用；
+ *   OrderState 对象只用来判断成功失败和显示状态信息，所有订单共用一组
+ */
+public class OrderStateTable {
+    // 一个 byte 能表示的状态数
+    static final int MAX_STATES = 128;
+    // 按编号排列的状态对象
+    private final OrderState[] states;
+    // 成功 / 失败 后的状态编号
+    private final int[] transitions;
+
+    private OrderStateTable(OrderState[] states, int[] transitions) {
+        this.states = states;
+        this.transitions = transitions;
+    }
+
+    /**
+     * 从初始状态开始遍历状态图，生成转换表
+     * @param initial 初始状态
+     * @return
+     */
+    public static OrderStateTable compile(OrderState initial) {
+        List<OrderState> states = new ArrayList<>();
+        states.add(initial);
+        for (int i = 0; i < states.size(); i++) {
+            OrderState state = states.get(i);
+            for (OrderState next : new OrderState[]{state.getSucessOrderState(), state.getFailOrderState()}) {
+                if (next != null && indexOf(states, next) < 0) {
+                    states.add(next);
+                }
+            }
+            if (states.size() > MAX_STATES) {
+                throw new IllegalArgumentException("too many states: " + states.size());
+            }
+        }
+        int[] transitions = new int[states.size() * 2];
+        for (int i = 0; i < states.size(); i++) {
+            OrderState state = states.get(i);
+            transitions[i * 2] = state.getSucessOrderState() == null ? i : indexOf(states, state.getSucessOrderState());
+            transitions[i * 2 + 1] = state.getFailOrderState() == null ? i : indexOf(states, state.getFailOrderState());
+        }
+        return new OrderStateTable(states.toArray(new OrderState[0]), transitions);
+    }
+
+    /**
+     * 状态对象没有重写 equals，按引用查找
+     */
+    private static int indexOf(List<OrderState> states, OrderState state) {
+        for (int i = 0; i < states.size(); i++) {
+            if (states.get(i) == state) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 查表得到下一个状态
+     * @param state 当前状态编号
+     * @param success 当前状态是否处理成功
+     * @return 下一个状态编号
+     */
+    public byte next(byte state, boolean success) {
+        return (byte) transitions[(state << 1) | (success ? 0 : 1)];
+    }
+
+    /**
+     * 编号对应的状态对象
+     * @param state
+     * @return
+     */
+    public OrderState getState(byte state) {
+        return states[state];
+    }
+
+    /**
+     * 状态对象对应的编号
+     * @param state
+     * @return 不在状态图中时返回 -1
+     */
+    public byte idOf(OrderState state) {
+        for (int i = 0; i < states.length; i++) {
+            if (states[i] == state) {
+                return (byte) i;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return states.length;
+    }
+
+    /**
+     * 状态名，用于输出和报告
+     * @param state
+     * @return
+     */
+    public String getName(byte state) {
+        return states[state].getClass().getSimpleName();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (byte i = 0; i < states.length; i++) {
+            builder.append(i).append(' ').append(getName(i))
+                    .append(" -> success ").append(getName(next(i, true)))
+                    .append(", fail ").append(getName(next(i, false))).append('\n');
+        }
+        return builder.toString();
+    }
+
+    public static void main(String[] args) {
+        OrderStateTable table = OrderStateTable.compile(OrderContext.PRE_ORDER_STATE);
+        System.out.print(table);
+
+        // 与 OrderContext 的状态转换保持一致
+        OrderStateStore store = new OrderStateStore(table, 1);
+        OrderContext context = new OrderContext();
+        for (int i = 0; i < 5; i++) {
+            store.handle(0);
+            context.advance();
+            System.out.println(table.getName(store.getState(0)) + " / " + context.getCurState().getClass().getSimpleName());
+        }
+
+        // 内存对比：每个订单一个 OrderContext（共用状态对象） vs 每个订单一个 byte
+        int orders = 1_000_000;
+        long before = usedMemory();
+        OrderContext[] contexts = new OrderContext[orders];
+        for (int i = 0; i < orders; i++) {
+            contexts[i] = new OrderContext();
+        }
+        long objectGraph = usedMemory() - before;
+        // 统计内存时 contexts 必须仍然可达
+        Reference.reachabilityFence(contexts);
+        System.out.printf("object graph: %d orders, %d MB, %d bytes/order%n",
+                orders, objectGraph >> 20, objectGraph / orders);
+        contexts = null;
+
+        before = usedMemory();
+        OrderStateStore big = new OrderStateStore(table, orders * 10);
+        long dense = usedMemory() - before;
+        System.out.printf("dense table:  %d orders, %d MB, %.2f bytes/order%n",
+                big.size(), dense >> 20, (double) dense / big.size());
+
+        long begin = System.nanoTime();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < big.size(); i++) {
+                big.handle(i);
+            }
+        }
+        long nanos = System.nanoTime() - begin;
+        // 订单完成是最后一个编号的状态
+        System.out.printf("%d transitions in %d ms, finished orders %d%n", big.size() * 3L,
+                nanos / 1_000_000, big.count((byte) (table.size() - 1)));
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
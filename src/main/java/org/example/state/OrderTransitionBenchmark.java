@@ -0,0 +1,104 @@
+package org.example.state;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 竞争下的状态转换：64 个线程随机处理一组共享的订单
+ *   订单完成后重置为预订单，这样每个订单都在 预订单 -> 正式订单 -> 付款 -> 完成 之间循环
+ *
+ *   校验：每个状态对应链上的位置（0 ~ 3），所有订单的位置之和必须等于 转换次数 - 3 * 重置次数，
+ *   普通的读后写会丢失或者重复转换，CAS 不会
+ */
+public class OrderTransitionBenchmark {
+    private static final int THREADS = 64;
+    private static final int ORDERS = 1024;
+    private static final int OPERATIONS_PER_THREAD = 200_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int round = 1; round <= 3; round++) {
+            run("plain", round, false);
+            run("cas", round, true);
+        }
+    }
+
+    private static void run(String name, int round, boolean cas) throws InterruptedException {
+        OrderContext[] orders = new OrderContext[ORDERS];
+        for (int i = 0; i < ORDERS; i++) {
+            orders[i] = new OrderContext();
+        }
+        LongAdder transitions = new LongAdder();
+        LongAdder resets = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long localTransitions = 0;
+                long localResets = 0;
+                for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                    OrderContext order = orders[random.nextInt(ORDERS)];
+                    if (cas) {
+                        OrderState current = order.getCurState();
+                        if (current == OrderContext.FINISH_ORDER_STATE) {
+                            if (order.compareAndSetState(current, OrderContext.PRE_ORDER_STATE)) {
+                                localResets++;
+                            }
+                        } else if (order.tryAdvance(current)) {
+                            localTransitions++;
+                        }
+                    } else {
+                        // 读后写，两次操作之间可能被其他线程修改
+                        OrderState current = order.getCurState();
+                        if (current == OrderContext.FINISH_ORDER_STATE) {
+                            order.setCurState(OrderContext.PRE_ORDER_STATE);
+                            localResets++;
+                        } else {
+                            order.setCurState(current.nextState());
+                            localTransitions++;
+                        }
+                    }
+                }
+                transitions.add(localTransitions);
+                resets.add(localResets);
+            });
+            threads[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long nanos = System.nanoTime() - begin;
+
+        long positions = 0;
+        for (OrderContext order : orders) {
+            positions += positionOf(order.getCurState());
+        }
+        long expected = transitions.sum() - 3 * resets.sum();
+        long operations = (long) THREADS * OPERATIONS_PER_THREAD;
+        System.out.printf("round %d %-5s: %d threads, %d ops in %d ms (%.1f M ops/s), transitions %d, resets %d, consistent %b%n",
+                round, name, THREADS, operations, nanos / 1_000_000, operations * 1000.0 / nanos,
+                transitions.sum(), resets.sum(), positions == expected);
+    }
+
+    private static int positionOf(OrderState state) {
+        if (state == OrderContext.PRE_ORDER_STATE) {
+            return 0;
+        }
+        if (state == OrderContext.REAL_ORDER_STATE) {
+            return 1;
+        }
+        if (state == OrderContext.PAY_ORDER_STATE) {
+            return 2;
+        }
+        return 3;
+    }
+}
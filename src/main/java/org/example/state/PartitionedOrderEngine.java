@@ -0,0 +1,307 @@
+package org.example.state;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 分区的单写者订单状态引擎：订单按 编号 % 分区数 分到不同的分区，每个分区由一个线程独占，
+ *   分区线程从自己的队列中取出请求并转换状态，同一个订单只会被同一个线程修改，转换不需要任何同步
+ *
+ *   分区内部使用 OrderStateStore，订单 id 在分区中的下标为 id / 分区数
+ *   请求的结果通过 CompletableFuture 返回，future 在分区线程中完成，
+ *   后续的回调不要做耗时操作，否则会阻塞整个分区
+ *
+ *   队列有界，分区处理不过来时提交线程阻塞
+ *   close() 之后提交的请求，以及 close() 时还没有处理的请求，future 以 RejectedExecutionException 结束
+ *   订单编号不在 0 ~ orders - 1 之间的请求不会进入队列，future 以 IllegalArgumentException 结束
+ */
+public class PartitionedOrderEngine implements AutoCloseable {
+    // 每个分区队列的容量
+    static final int QUEUE_CAPACITY = 1 << 16;
+    // 分区线程一次最多取出的请求数
+    static final int DRAIN_BATCH = 256;
+    // 只用来通知分区线程退出
+    private static final Request STOP = new Request(-1, (byte) 0, null);
+
+    private final OrderStateTable table;
+    private final int orders;
+    private final Partition[] partitions;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param table
+     * @param orders 订单总数，编号 0 ~ orders - 1
+     * @param partitionCount 分区数，一般不超过 CPU 核数
+     */
+    public PartitionedOrderEngine(OrderStateTable table, int orders, int partitionCount) {
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException("partitionCount must be positive: " + partitionCount);
+        }
+        this.table = table;
+        this.orders = orders;
+        this.partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            // 编号 % partitionCount == i 的订单个数
+            int size = orders / partitionCount + (i < orders % partitionCount ? 1 : 0);
+            partitions[i] = new Partition(i, new OrderStateStore(table, size));
+            partitions[i].start();
+        }
+    }
+
+    /**
+     * 处理订单当前状态，按状态的判断结果转换
+     * @param orderId
+     * @return 转换后的状态
+     */
+    public CompletableFuture<OrderState> handle(int orderId) {
+        return submit(orderId, Request.HANDLE);
+    }
+
+    /**
+     * 按指定的处理结果转换
+     * @param orderId
+     * @param success
+     * @return 转换后的状态
+     */
+    public CompletableFuture<OrderState> transition(int orderId, boolean success) {
+        return submit(orderId, success ? Request.SUCCESS : Request.FAIL);
+    }
+
+    private CompletableFuture<OrderState> submit(int orderId, byte outcome) {
+        CompletableFuture<OrderState> future = new CompletableFuture<>();
+        if (orderId < 0 || orderId >= orders) {
+            future.completeExceptionally(new IllegalArgumentException("orderId out of range [0, " + orders + "): " + orderId));
+            return future;
+        }
+        if (closed.get()) {
+            future.completeExceptionally(new RejectedExecutionException("order engine is closed"));
+            return future;
+        }
+        Partition partition = partitions[orderId % partitions.length];
+        try {
+            partition.queue.put(new Request(orderId / partitions.length, outcome, future));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
+        }
+        // 与 close() 并发时请求可能排在 STOP 之后，分区线程已经退出，由提交线程拒绝
+        if (partition.stopped) {
+            partition.rejectQueued();
+        }
+        return future;
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * 处理完已经提交的请求后停止所有分区线程，等待期间被中断时继续等待，返回前恢复中断标记
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        boolean interrupted = false;
+        for (Partition partition : partitions) {
+            while (true) {
+                try {
+                    partition.queue.put(STOP);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        for (Partition partition : partitions) {
+            while (true) {
+                try {
+                    partition.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 一个转换请求
+     */
+    private static final class Request {
+        static final byte HANDLE = -1;
+        static final byte FAIL = 0;
+        static final byte SUCCESS = 1;
+
+        final int index;
+        final byte outcome;
+        final CompletableFuture<OrderState> future;
+
+        Request(int index, byte outcome, CompletableFuture<OrderState> future) {
+            this.index = index;
+            this.outcome = outcome;
+            this.future = future;
+        }
+    }
+
+    /**
+     * 分区：一个线程、一个队列、一段订单状态
+     */
+    private final class Partition extends Thread {
+        private final BlockingQueue<Request> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final OrderStateStore store;
+        // 分区线程不再处理请求，之后入队的请求全部拒绝
+        private volatile boolean stopped;
+
+        Partition(int id, OrderStateStore store) {
+            super("order-partition-" + id);
+            this.store = store;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Request> batch = new ArrayList<>(DRAIN_BATCH);
+            try {
+                while (true) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, DRAIN_BATCH - 1);
+                    for (int i = 0; i < batch.size(); i++) {
+                        Request request = batch.get(i);
+                        if (request == STOP) {
+                            stopped = true;
+                            for (Request rest : batch.subList(i + 1, batch.size())) {
+                                reject(rest);
+                            }
+                            rejectQueued();
+                            return;
+                        }
+                        process(request);
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                stopped = true;
+                for (Request rest : batch) {
+                    reject(rest);
+                }
+                rejectQueued();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * 拒绝队列中剩余的请求，分区线程和提交线程都可能调用，每个请求只会被取出一次
+         */
+        void rejectQueued() {
+            Request request;
+            while ((request = queue.poll()) != null) {
+                reject(request);
+            }
+        }
+
+        private void reject(Request request) {
+            if (request != STOP) {
+                request.future.completeExceptionally(new RejectedExecutionException("order engine is closed"));
+            }
+        }
+
+        private void process(Request request) {
+            try {
+                byte state = request.outcome == Request.HANDLE
+                        ? store.handle(request.index)
+                        : store.transition(request.index, request.outcome == Request.SUCCESS);
+                request.future.complete(table.getState(state));
+            } catch (RuntimeException e) {
+                request.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        OrderStateTable table = OrderStateTable.compile(OrderContext.PRE_ORDER_STATE);
+        int orders = 1_000_000;
+
+        try (PartitionedOrderEngine engine = new PartitionedOrderEngine(table, orders, 2)) {
+            for (int i = 0; i < 4; i++) {
+                System.out.println("order 42: " + engine.handle(42).get().getClass().getSimpleName());
+            }
+        }
+
+        // 关闭之后提交的请求立即被拒绝，不会一直等待
+        PartitionedOrderEngine closedEngine = new PartitionedOrderEngine(table, orders, 2);
+        closedEngine.close();
+        try {
+            closedEngine.handle(42).get();
+        } catch (ExecutionException e) {
+            System.out.println("after close: " + e.getCause());
+        }
+
+        // 编号越界的请求同样通过 future 返回错误，不会抛出异常，也不会进入分区
+        try (PartitionedOrderEngine engine = new PartitionedOrderEngine(table, orders, 2)) {
+            for (int orderId : new int[]{-1, orders}) {
+                try {
+                    engine.handle(orderId).get();
+                } catch (ExecutionException e) {
+                    System.out.println("order " + orderId + ": " + e.getCause());
+                }
+            }
+        }
+
+        // 分区数从 1 到 maxPartitions（默认为 CPU 核数）逐个测量吞吐
+        int cores = Runtime.getRuntime().availableProcessors();
+        int maxPartitions = args.length > 0 ? Integer.parseInt(args[0]) : Math.max(cores, 2);
+        int producers = Math.max(2, cores);
+        int requestsPerProducer = 1_000_000;
+        System.out.println("available processors: " + cores + ", producers: " + producers);
+        for (int partitionCount = 1; partitionCount <= maxPartitions; partitionCount++) {
+            for (int round = 1; round <= 2; round++) {
+                try (PartitionedOrderEngine engine = new PartitionedOrderEngine(table, orders, partitionCount)) {
+                    long nanos = drive(engine, orders, producers, requestsPerProducer);
+                    long total = (long) producers * requestsPerProducer;
+                    System.out.printf("partitions %d, round %d: %d requests in %d ms (%.2f M/s)%n",
+                            partitionCount, round, total, nanos / 1_000_000, total * 1000.0 / nanos);
+                }
+            }
+        }
+    }
+
+    private static long drive(PartitionedOrderEngine engine, int orders, int producers, int requests)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(producers * requests);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int offset = p;
+            threads[p] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < requests; i++) {
+                    int orderId = (int) ((offset + (long) i * producers) % orders);
+                    engine.transition(orderId, (i & 7) != 0).thenRun(done::countDown);
+                }
+            });
+            threads[p].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - begin;
+    }
+}
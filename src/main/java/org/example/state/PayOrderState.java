@@ -0,0 +1,51 @@
+package org.example.state;
+
+import java.util.concurrent.CompletionStage;
+
+class PayOrderState extends OrderState{
+
+    /**
+     * 是否支付成功由订单的支付网关异步返回
+     */
+    @Override
+    public CompletionStage<Boolean> isSuccessAsync(OrderContext orderContext) {
+        return orderContext.getPaymentGateway().isPaid(orderContext);
+    }
+
+    /**
+     * 同步处理时等待支付网关的结果，与异步处理的判断一致
+     */
+    @Override
+    public boolean isSuccess(OrderContext orderContext) {
+        return isSuccessAsync(orderContext).toCompletableFuture().join();
+    }
+
+    @Override
+    public void showStateInfo(OrderContext orderContext) {
+        System.out.println("当前状态：订单付款");
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return true;
+    }
+
+    @Override
+    public boolean isDone() {
+        return true;
+    }
+
+    public OrderState handle(OrderContext orderContext){
+        if(!isDone()){
+            System.out.println("订单付款状态 没有结束");
+        }
+        if(isSuccess(orderContext)){
+            System.out.println("订单付款状态 成功");
+            return this.transition(orderContext, this.getSucessOrderState());
+        }else{
+            System.out.println("订单付款状态 失败");
+            return this.transition(orderContext, this.getFailOrderState());
+        }
+    }
+
+}
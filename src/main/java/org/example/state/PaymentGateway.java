@@ -0,0 +1,14 @@
+package org.example.state;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 支付网关：异步查询订单是否已经支付
+ */
+interface PaymentGateway {
+    // 不查询外部系统，认为订单已经支付
+    PaymentGateway PAID = orderContext -> CompletableFuture.completedFuture(true);
+
+    CompletionStage<Boolean> isPaid(OrderContext orderContext);
+}
@@ -0,0 +1,33 @@
+package org.example.state;
+
+class RealOrderState extends OrderState{
+
+    @Override
+    public void showStateInfo(OrderContext orderContext) {
+        System.out.println("当前状态：正式订单");
+    }
+
+    @Override
+    public boolean isSuccess() {
+        return true;
+    }
+
+    @Override
+    public boolean isDone() {
+        return true;
+    }
+
+    public OrderState handle(OrderContext orderContext){
+        if(!isDone()){
+            System.out.println("正式订单状态 没有结束");
+        }
+        if(isSuccess()){
+            System.out.println("正式订单状态 成功");
+            return this.transition(orderContext, this.getSucessOrderState());
+        }else{
+            System.out.println("正式订单状态 失败");
+            return this.transition(orderContext, this.getFailOrderState());
+        }
+    }
+
+}
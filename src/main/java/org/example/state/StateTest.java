@@ -1,5 +1,6 @@
 package org.example.state;
 
+
 /**
  * 状态模式：主要用来解决对象在多种状态转换时，需要对外输出不同的行为的问题。
  *         状态和行为是一一对应的，状态之间可以相互转换, 类似 有限状态机
@@ -15,7 +16,8 @@ package org.example.state;
  *
  *    状态模式，对调用者 仅仅暴漏 context 对象，所以 具体使用的状态，一般在 context 中作为属性
  *            初始化完成，并申明为 public 类似枚举模式。具体状态类，在 handle中，指定 下一个状态时，可以直接：
- *            super.getContext().setCurState(Context.PreState),来设置下一个状态流变
+ *            orderContext.setCurState(OrderContext.PRE_ORDER_STATE),来设置下一个状态流变
+ *            状态对象不持有 context，由 handle(orderContext) 传入，所有 context 可以共用同一组状态对象
  *
  *            也可以，在 abstract state中，保留 成功或者失败后的 nextState，这样就可以在context中，
  *            指定 不同状态的 下一步 ，然后 具体状态类，可以仅仅实现 判定等操作，具体状态流转 由 context、
@@ -44,216 +46,3 @@ public class StateTest {
         orderContext.handle();
     }
 }
-
-abstract class OrderState{
-    private OrderContext orderContext;
-    private OrderState successOrderState;
-    private OrderState failOrderState;
-
-    public OrderState getSucessOrderState() {
-        return successOrderState;
-    }
-
-    public void setSuccessOrderState(OrderState sucessOrderState) {
-        this.successOrderState = sucessOrderState;
-    }
-
-    public OrderState getFailOrderState() {
-        return failOrderState;
-    }
-
-    public void setFailOrderState(OrderState failOrderState) {
-        this.failOrderState = failOrderState;
-    }
-
-    public OrderState(OrderContext orderContext){
-        this.orderContext = orderContext;
-    }
-
-    public OrderContext getOrderContext() {
-        return orderContext;
-    }
-
-    public abstract void showStateInfo();
-
-    public abstract boolean isSuccess();
-
-    public abstract boolean isDone();
-
-    public abstract void handle();
-
-}
-
-class OrderContext{
-    public final PreOrderState preOrderState = new PreOrderState(this);
-    public final RealOrderState realOrderState = new RealOrderState(this);
-    public final PayOrderState payOrderState = new PayOrderState(this);
-    public final FinishOrderState finishOrderState = new FinishOrderState(this);
-    {
-        preOrderState.setSuccessOrderState(realOrderState);
-        preOrderState.setFailOrderState(preOrderState);
-
-        realOrderState.setSuccessOrderState(payOrderState);
-        realOrderState.setFailOrderState(preOrderState);
-
-        payOrderState.setSuccessOrderState(finishOrderState);
-        payOrderState.setFailOrderState(preOrderState);
-    }
-
-    private OrderState orderState;
-
-    public OrderContext() {
-        orderState = this.preOrderState;
-    }
-
-    public void setCurState(OrderState orderState){
-        this.orderState = orderState;
-    }
-
-    public OrderState getCurState(){
-        return this.orderState;
-    }
-
-    public void showStateInfo(){
-        this.orderState.showStateInfo();
-    }
-
-    public void handle(){
-        this.orderState.handle();
-    }
-}
-
-class PreOrderState extends OrderState{
-
-    public PreOrderState(OrderContext orderContext) {
-        super(orderContext);
-    }
-
-    @Override
-    public void showStateInfo() {
-        System.out.println("当前状态：预订单");
-    }
-
-    @Override
-    public boolean isSuccess() {
-        return true;
-    }
-
-    @Override
-    public boolean isDone() {
-        return true;
-    }
-
-    public void handle(){
-        if(!isDone()){
-            System.out.println("预订单状态 没有结束");
-        }
-        if(isSuccess()){
-            System.out.println("预订单状态 成功");
-            this.getOrderContext().setCurState(this.getSucessOrderState());
-        }else{
-            System.out.println("预订单状态 失败");
-            this.getOrderContext().setCurState(this.getFailOrderState());
-        }
-    }
-
-}
-
-class RealOrderState extends OrderState{
-
-    public RealOrderState(OrderContext orderContext) {
-        super(orderContext);
-    }
-
-    @Override
-    public void showStateInfo() {
-        System.out.println("当前状态：正式订单");
-    }
-
-    @Override
-    public boolean isSuccess() {
-        return true;
-    }
-
-    @Override
-    public boolean isDone() {
-        return true;
-    }
-
-    public void handle(){
-        if(!isDone()){
-            System.out.println("正式订单状态 没有结束");
-        }
-        if(isSuccess()){
-            System.out.println("正式订单状态 成功");
-            this.getOrderContext().setCurState(this.getSucessOrderState());
-        }else{
-            System.out.println("正式订单状态 失败");
-            this.getOrderContext().setCurState(this.getFailOrderState());
-        }
-    }
-
-}
-
-class PayOrderState extends OrderState{
-
-    public PayOrderState(OrderContext orderContext) {
-        super(orderContext);
-    }
-
-    @Override
-    public void showStateInfo() {
-        System.out.println("当前状态：订单付款");
-    }
-
-    @Override
-    public boolean isSuccess() {
-        return true;
-    }
-
-    @Override
-    public boolean isDone() {
-        return true;
-    }
-
-    public void handle(){
-        if(!isDone()){
-            System.out.println("订单付款状态 没有结束");
-        }
-        if(isSuccess()){
-            System.out.println("订单付款状态 成功");
-            this.getOrderContext().setCurState(this.getSucessOrderState());
-        }else{
-            System.out.println("订单付款状态 失败");
-            this.getOrderContext().setCurState(this.getFailOrderState());
-        }
-    }
-
-}
-
-class FinishOrderState extends OrderState{
-
-    public FinishOrderState(OrderContext orderContext) {
-        super(orderContext);
-    }
-
-    @Override
-    public void showStateInfo() {
-        System.out.println("当前状态：订单完成");
-    }
-
-    @Override
-    public boolean isSuccess() {
-        return true;
-    }
-
-    @Override
-    public boolean isDone() {
-        return true;
-    }
-
-    public void handle(){
-        System.out.println("订单完成并记录状态");
-    }
-
-}
@@ -0,0 +1,39 @@
+package org.example.state;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地的支付网关桩：固定延迟后随机返回支付结果，等待期间不占用线程
+ */
+class StubPaymentGateway implements PaymentGateway {
+    private final long latencyMillis;
+    private final double successRate;
+    private final Executor delayed;
+    private final LongAdder calls = new LongAdder();
+
+    StubPaymentGateway(long latencyMillis, double successRate) {
+        this.latencyMillis = latencyMillis;
+        this.successRate = successRate;
+        // 结果直接在延迟调度线程中完成，后续的状态转换也在该线程中执行，不再额外创建线程
+        this.delayed = CompletableFuture.delayedExecutor(latencyMillis, TimeUnit.MILLISECONDS, Runnable::run);
+    }
+
+    @Override
+    public CompletionStage<Boolean> isPaid(OrderContext orderContext) {
+        calls.increment();
+        return CompletableFuture.supplyAsync(() -> ThreadLocalRandom.current().nextDouble() < successRate, delayed);
+    }
+
+    long getCalls() {
+        return calls.sum();
+    }
+
+    long getLatencyMillis() {
+        return latencyMillis;
+    }
+}
@@ -0,0 +1,108 @@
+package org.example.state;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 批量转换的统计：每种 (from, to) 状态转换发生的次数
+ *   counts[from * 状态数 + to]，状态编号与 OrderStateTable 相同
+ */
+public class TransitionCounts {
+    private final OrderStateTable table;
+    private final long[] counts;
+
+    TransitionCounts(OrderStateTable table, long[] counts) {
+        this.table = table;
+        this.counts = counts;
+    }
+
+    /**
+     * 从 from 转换到 to 的次数
+     * @param from
+     * @param to
+     * @return
+     */
+    public long get(byte from, byte to) {
+        return counts[from * table.size() + to];
+    }
+
+    /**
+     * 状态真正改变的次数
+     * @return
+     */
+    public long getChanged() {
+        long changed = 0;
+        for (byte from = 0; from < table.size(); from++) {
+            for (byte to = 0; to < table.size(); to++) {
+                if (from != to) {
+                    changed += get(from, to);
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 总次数，等于批次中的订单数
+     * @return
+     */
+    public long getTotal() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (byte from = 0; from < table.size(); from++) {
+            for (byte to = 0; to < table.size(); to++) {
+                if (get(from, to) != 0) {
+                    builder.append(table.getName(from)).append(" -> ").append(table.getName(to))
+                            .append(": ").append(get(from, to)).append('\n');
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    public static void main(String[] args) {
+        OrderStateTable table = OrderStateTable.compile(OrderContext.PRE_ORDER_STATE);
+        int orders = 5_000_000;
+        int[] orderIds = new int[orders];
+        boolean[] outcomes = new boolean[orders];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < orders; i++) {
+            orderIds[i] = i;
+        }
+
+        OrderStateStore store = new OrderStateStore(table, orders);
+        OrderContext[] contexts = new OrderContext[orders];
+        for (int i = 0; i < orders; i++) {
+            contexts[i] = new OrderContext();
+        }
+        for (int round = 1; round <= 4; round++) {
+            for (int i = 0; i < orders; i++) {
+                outcomes[i] = random.nextInt(10) < 9;
+            }
+            // 逐个订单处理：按与批量处理相同的处理结果取下一个状态，再逐个 compareAndSetState
+            long begin = System.nanoTime();
+            for (int i = 0; i < orders; i++) {
+                OrderContext context = contexts[orderIds[i]];
+                OrderState current = context.getCurState();
+                OrderState next = current.getSucessOrderState() == null ? current
+                        : outcomes[i] ? current.getSucessOrderState() : current.getFailOrderState();
+                context.compareAndSetState(current, next);
+            }
+            long perOrderNanos = System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            TransitionCounts counts = store.transitionAll(orderIds, outcomes);
+            long bulkNanos = System.nanoTime() - begin;
+            System.out.printf("round %d: per order %d ms, bulk %d ms, changed %d of %d%n", round,
+                    perOrderNanos / 1_000_000, bulkNanos / 1_000_000, counts.getChanged(), counts.getTotal());
+            System.out.print(counts);
+        }
+    }
+}